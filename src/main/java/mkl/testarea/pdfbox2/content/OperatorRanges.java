@@ -0,0 +1,251 @@
+package mkl.testarea.pdfbox2.content;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * The byte ranges of the operations in a decoded content stream, determined
+ * by a light-weight lexer which only recognizes token boundaries. The range
+ * of an operation includes its operands and the white space and comments in
+ * front of them, so copying the ranges of all operations reproduces the
+ * stream.
+ * </p>
+ * <p>
+ * As the lexer is not the PDFBox parser, {@link #matches(int, String, int)}
+ * allows to check whether an operation parsed by PDFBox corresponds to the
+ * range with the same index. Inline images (<code>BI</code> ... <code>EI</code>)
+ * are recognized as a single operation, like PDFBox does.
+ * </p>
+ *
+ * @author mkl
+ */
+class OperatorRanges {
+    OperatorRanges(byte[] data) {
+        this.data = data;
+        lex();
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the operation with the given index has the given operator name
+     * and number of operands.
+     */
+    boolean matches(int index, String name, int operandCount) {
+        if (index >= size || operandCounts[index] != operandCount)
+            return false;
+        int start = nameStarts[index];
+        if (nameEnds[index] - start != name.length())
+            return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (data[start + i] != name.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the start of the range of the operation with the given index,
+     * including the white space and operands in front of it.
+     */
+    int getStart(int index) {
+        return index == 0 ? 0 : ends[index - 1];
+    }
+
+    /**
+     * @return the end of the range of the operation with the given index,
+     * including a single white space character following it.
+     */
+    int getEnd(int index) {
+        return ends[index];
+    }
+
+    //
+    // helpers
+    //
+    void lex() {
+        int length = data.length;
+        int position = 0;
+        int depth = 0;
+        int operandCount = 0;
+        while (position < length) {
+            int b = data[position] & 0xff;
+            if (isWhitespace(b)) {
+                position++;
+            } else if (b == '%') {
+                while (position < length && data[position] != '\n' && data[position] != '\r')
+                    position++;
+            } else if (b == '(') {
+                if (depth == 0)
+                    operandCount++;
+                position = skipLiteralString(position);
+            } else if (b == '<') {
+                if (position + 1 < length && data[position + 1] == '<') {
+                    if (depth == 0)
+                        operandCount++;
+                    depth++;
+                    position += 2;
+                } else {
+                    if (depth == 0)
+                        operandCount++;
+                    while (position < length && data[position] != '>')
+                        position++;
+                    position++;
+                }
+            } else if (b == '>') {
+                if (position + 1 < length && data[position + 1] == '>') {
+                    position++;
+                    if (depth > 0)
+                        depth--;
+                }
+                position++;
+            } else if (b == '[') {
+                if (depth == 0)
+                    operandCount++;
+                depth++;
+                position++;
+            } else if (b == ']') {
+                if (depth > 0)
+                    depth--;
+                position++;
+            } else if (b == '{' || b == '}' || b == ')') {
+                position++;
+            } else if (b == '/') {
+                if (depth == 0)
+                    operandCount++;
+                position++;
+                while (position < length && !isWhitespace(data[position] & 0xff) && !isDelimiter(data[position] & 0xff))
+                    position++;
+            } else {
+                int start = position;
+                while (position < length && !isWhitespace(data[position] & 0xff) && !isDelimiter(data[position] & 0xff))
+                    position++;
+                if (b == '+' || b == '-' || b == '.' || (b >= '0' && b <= '9') || isKeyword(start, position)) {
+                    if (depth == 0)
+                        operandCount++;
+                } else if (depth == 0) {
+                    int nameEnd = position;
+                    if (nameEnd - start == 2 && data[start] == 'B' && data[start + 1] == 'I') {
+                        position = skipInlineImage(position);
+                        if (position < 0)
+                            return;
+                    }
+                    if (position < length && isWhitespace(data[position] & 0xff))
+                        position++;
+                    add(start, nameEnd, position, operandCount);
+                    operandCount = 0;
+                }
+            }
+        }
+        if (size > 0 && operandCount == 0)
+            ends[size - 1] = length;
+    }
+
+    void add(int nameStart, int nameEnd, int end, int operandCount) {
+        if (size == ends.length) {
+            int capacity = Math.max(64, 2 * size);
+            nameStarts = Arrays.copyOf(nameStarts, capacity);
+            nameEnds = Arrays.copyOf(nameEnds, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            operandCounts = Arrays.copyOf(operandCounts, capacity);
+        }
+        nameStarts[size] = nameStart;
+        nameEnds[size] = nameEnd;
+        ends[size] = end;
+        operandCounts[size] = operandCount;
+        size++;
+    }
+
+    int skipLiteralString(int position) {
+        int nesting = 0;
+        while (position < data.length) {
+            byte b = data[position++];
+            if (b == '\\')
+                position++;
+            else if (b == '(')
+                nesting++;
+            else if (b == ')' && --nesting == 0)
+                break;
+        }
+        return position;
+    }
+
+    /**
+     * Skips the inline image dictionary and data following a <code>BI</code>
+     * and returns the position after the closing <code>EI</code>, or -1 if
+     * there is none, in which case the rest of the stream is not lexed.
+     */
+    int skipInlineImage(int position) {
+        int length = data.length;
+        int id = indexOfKeyword('I', 'D', position);
+        if (id < 0)
+            return -1;
+        position = id + 3;
+        while (position + 1 < length) {
+            if (data[position] == 'E' && data[position + 1] == 'I' && isWhitespace(data[position - 1] & 0xff)
+                    && (position + 2 == length || isWhitespace(data[position + 2] & 0xff)) && hasNoBinaryFollowing(position + 2))
+                return position + 2;
+            position++;
+        }
+        return -1;
+    }
+
+    int indexOfKeyword(char first, char second, int position) {
+        int length = data.length;
+        for (; position + 1 < length; position++) {
+            if (data[position] == first && data[position + 1] == second && isWhitespace(data[position - 1] & 0xff)
+                    && (position + 2 == length || isWhitespace(data[position + 2] & 0xff)))
+                return position;
+        }
+        return -1;
+    }
+
+    boolean hasNoBinaryFollowing(int position) {
+        int end = Math.min(data.length, position + 10);
+        for (; position < end; position++) {
+            int b = data[position] & 0xff;
+            if (b > 0x7f || (b < 0x20 && !isWhitespace(b)))
+                return false;
+        }
+        return true;
+    }
+
+    boolean isKeyword(int start, int end) {
+        return equals(start, end, "true") || equals(start, end, "false") || equals(start, end, "null");
+    }
+
+    boolean equals(int start, int end, String keyword) {
+        if (end - start != keyword.length())
+            return false;
+        for (int i = 0; i < keyword.length(); i++) {
+            if (data[start + i] != keyword.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    static boolean isWhitespace(int b) {
+        return b == 0 || b == 9 || b == 10 || b == 12 || b == 13 || b == 32;
+    }
+
+    /**
+     * @return whether the given byte neither is white space nor a delimiter, i.e.
+     * whether it would merge with an adjacent regular character into one token.
+     */
+    static boolean isRegular(int b) {
+        return !isWhitespace(b) && !isDelimiter(b);
+    }
+
+    static boolean isDelimiter(int b) {
+        return b == '(' || b == ')' || b == '<' || b == '>' || b == '[' || b == ']' || b == '{' || b == '}' || b == '/' || b == '%';
+    }
+
+    final byte[] data;
+    int size = 0;
+    int[] nameStarts = new int[0];
+    int[] nameEnds = new int[0];
+    int[] ends = new int[0];
+    int[] operandCounts = new int[0];
+}
@@ -0,0 +1,138 @@
+package mkl.testarea.pdfbox2.content;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+
+import mkl.testarea.pdfbox2.util.PageRangeExecution;
+
+/**
+ * <p>
+ * This class edits the page content streams of a document in parallel by
+ * splitting it into page ranges and running independent {@link PdfContentStreamEditor}
+ * instances per page on a thread pool, configured as described in
+ * {@link PageRangeExecution}. As {@link PDDocument} instances are
+ * not thread safe, each worker loads its own copy of the document, edits the
+ * pages of its range there, and keeps the compressed replacement streams as
+ * raw bytes.
+ * </p>
+ * <p>
+ * Only after all workers have finished, the replacement streams are committed
+ * to the target document in a short serialized phase which merely copies the
+ * already compressed bytes into new streams and sets them as page contents.
+ * Thus, the target document is only ever touched by the calling thread.
+ * </p>
+ * <p>
+ * Only the page content streams are transferred; editors changing anything
+ * else (resources, form XObjects, ...) cannot be used here.
+ * </p>
+ *
+ * @author mkl
+ */
+public class ParallelContentStreamEditing extends PageRangeExecution {
+    /**
+     * Creates a configured editor for the given page; it is called once per page,
+     * in the worker thread and with the worker's copy of the document.
+     */
+    public interface EditorFactory {
+        public PdfContentStreamEditor create(PDDocument document, PDPage page) throws IOException;
+    }
+
+    public ParallelContentStreamEditing(EditorFactory editorFactory) {
+        this.editorFactory = editorFactory;
+    }
+
+    /**
+     * Edits all pages of the given document. The workers load copies of the
+     * document as saved at the time of the call.
+     */
+    public void edit(PDDocument document) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        document.save(bytes);
+        edit(document, bytes.toByteArray());
+    }
+
+    /**
+     * Edits all pages of the given document which must have been loaded from
+     * the given file (or an equivalent one); pages are matched by index.
+     */
+    public void edit(PDDocument document, File file) throws IOException {
+        edit(document, () -> PDDocument.load(file));
+    }
+
+    /**
+     * Edits all pages of the given document which must have been loaded from
+     * the given bytes (or equivalent ones); pages are matched by index.
+     */
+    public void edit(PDDocument document, byte[] bytes) throws IOException {
+        edit(document, () -> PDDocument.load(bytes));
+    }
+
+    //
+    // helpers
+    //
+    /**
+     * The replacement content streams for a page range, compressed.
+     */
+    static class PageRange {
+        PageRange(int startPage, int endPage) {
+            this.startPage = startPage;
+            this.endPage = endPage;
+            this.contents = new byte[endPage - startPage + 1][];
+            this.filters = new COSName[endPage - startPage + 1];
+        }
+
+        final int startPage;
+        final int endPage;
+        final byte[][] contents;
+        final COSName[] filters;
+    }
+
+    void edit(PDDocument document, DocumentLoader loader) throws IOException {
+        List<PageRange> ranges = run(0, document.getNumberOfPages() - 1, (startPage, endPage) -> edit(loader, new PageRange(startPage, endPage)));
+
+        // serialized commit phase
+        for (PageRange range : ranges) {
+            for (int i = range.startPage; i <= range.endPage; i++)
+                commit(document, document.getPage(i), range.contents[i - range.startPage], range.filters[i - range.startPage]);
+        }
+    }
+
+    PageRange edit(DocumentLoader loader, PageRange range) throws IOException {
+        try (PDDocument document = loader.load()) {
+            if (document.getNumberOfPages() <= range.endPage)
+                throw new IOException("Source document has fewer pages than the document to edit");
+            for (int i = range.startPage; i <= range.endPage; i++) {
+                PDPage page = document.getPage(i);
+                editorFactory.create(document, page).processPage(page);
+                COSStream stream = page.getContentStreams().next().getCOSObject();
+                try (InputStream rawInputStream = stream.createRawInputStream()) {
+                    range.contents[i - range.startPage] = rawInputStream.readAllBytes();
+                }
+                range.filters[i - range.startPage] = stream.getCOSName(COSName.FILTER);
+            }
+        }
+        return range;
+    }
+
+    static void commit(PDDocument document, PDPage page, byte[] content, COSName filter) throws IOException {
+        COSStream stream = document.getDocument().createCOSStream();
+        if (filter != null)
+            stream.setItem(COSName.FILTER, filter);
+        try (OutputStream rawOutputStream = stream.createRawOutputStream()) {
+            rawOutputStream.write(content);
+        }
+        page.setContents(new PDStream(stream));
+    }
+
+    final EditorFactory editorFactory;
+}
@@ -1,20 +1,36 @@
 package mkl.testarea.pdfbox2.content;
 
 import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
+import org.apache.pdfbox.contentstream.PDContentStream;
 import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
 import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdfwriter.ContentStreamWriter;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.apache.pdfbox.util.Matrix;
 
 /**
  * <a href="https://stackoverflow.com/questions/58475104/filter-out-all-text-above-a-certain-font-size-from-pdf">
@@ -27,6 +43,13 @@ import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
  * the given operations as they are but change them in some fancy way.
  * </p>
  * <p>
+ * In pass-through mode (see {@link #setPassThrough(boolean)}) operations the
+ * subclass writes unchanged are copied verbatim from the original content
+ * instead of being re-serialized. Subclasses only interested in some operators
+ * can declare them in {@link #getRequiredOperators()} to skip processing the
+ * others.
+ * </p>
+ * <p>
  * This is a port of the iText 5 test area class <code>PdfContentStreamEditor</code>
  * and the iText 7 test area class <code>PdfCanvasEditor</code>.
  * </p>
@@ -63,12 +86,72 @@ public class PdfContentStreamEditor extends PDFGraphicsStreamEngine {
      * <p>
      * Override this method to achieve some fancy editing effect.
      * </p> 
+     * <p>
+     * In pass-through mode, the current operation is copied verbatim from the
+     * original content if it is written unchanged to the page or form content,
+     * i.e. the same operator and operands list instance with the same operand
+     * objects (for array operands also the same elements) as forwarded here.
+     * </p>
      */
     protected void write(ContentStreamWriter contentStreamWriter, Operator operator, List<COSBase> operands) throws IOException {
+        if (contentStreamWriter == replacement && operator == originalOperator && operands == originalOperands && isUnchanged(operands)) {
+            ((PassThroughOutputStream) replacementStream).copy(originalRanges.data,
+                    originalRanges.getStart(originalIndex), originalRanges.getEnd(originalIndex));
+            passedThroughCount++;
+            return;
+        }
         contentStreamWriter.writeTokens(operands);
         contentStreamWriter.writeToken(operator);
     }
 
+    /**
+     * <p>
+     * In pass-through mode, operations written unchanged are copied verbatim
+     * from the decoded original content stream, only changed or added ones
+     * are serialized. This keeps number formats, saves CPU, and does not
+     * inflate the stream. By default this mode is off.
+     * </p>
+     * <p>
+     * In this mode, change operands by replacing them in the operands list or
+     * by writing a different list; in-place changes of nested objects other
+     * than the elements of array operands are not recognized.
+     * </p>
+     */
+    public void setPassThrough(boolean passThrough) {
+        this.passThrough = passThrough;
+    }
+
+    public boolean isPassThrough() {
+        return passThrough;
+    }
+
+    /**
+     * @return the number of operations this editor has copied verbatim in
+     * pass-through mode so far, for all pages and form XObjects processed.
+     */
+    public int getPassedThroughCount() {
+        return passedThroughCount;
+    }
+
+    /**
+     * <p>
+     * Override this method to declare the operators whose processing this editor
+     * needs, e.g. the text showing operators for an editor removing certain texts.
+     * Only those operators and the operators they depend on for the graphics state,
+     * see {@link #STATE_OPERATORS}, are executed; all other operations are merely
+     * forwarded to {@link #nextOperation(Operator, List)} and
+     * {@link #write(ContentStreamWriter, Operator, List)}. This way editors only
+     * looking at text do not waste time building paths in engineering drawings.
+     * </p>
+     * <p>
+     * The default returns <code>null</code>, i.e. all operators are processed.
+     * The method is called once per page or form XObject processed.
+     * </p>
+     */
+    protected Collection<String> getRequiredOperators() {
+        return null;
+    }
+
     // stub implementation of PDFGraphicsStreamEngine abstract methods
     @Override
     public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) throws IOException { }
@@ -113,24 +196,102 @@ public class PdfContentStreamEditor extends PDFGraphicsStreamEngine {
     @Override
     public void processPage(PDPage page) throws IOException {
         PDStream stream = new PDStream(document);
-        replacement = new ContentStreamWriter(replacementStream = stream.createOutputStream(COSName.FLATE_DECODE));
-        super.processPage(page);
+        replacement = new ContentStreamWriter(replacementStream = createReplacementStream(stream));
+        interpretedOperators = determineInterpretedOperators();
+        if (passThrough && page.hasContents())
+            super.processChildStream(startPassThrough(page), page);
+        else
+            super.processPage(page);
         replacementStream.close();
         page.setContents(stream);
         replacement = null;
         replacementStream = null;
+        originalRanges = null;
     }
 
+    /**
+     * <p>
+     * Rewrites the content stream of the given form XObject unless it already
+     * has been rewritten using the same set of edited forms, see
+     * {@link #setEditedForms(Set)}. If recursion is enabled, see
+     * {@link #setRecurseIntoForms(boolean)}, the form XObjects in the
+     * resources of the form are processed thereafter, too.
+     * </p>
+     */
     public void processFormXObject(PDFormXObject formXObject, PDPage page) throws IOException {
+        if (!editedForms.add(formXObject.getCOSObject()))
+            return;
+        rewriteFormXObject(formXObject, page);
+        if (recurseIntoForms)
+            processFormXObjects(formXObject.getResources(), page);
+    }
+
+    /**
+     * Processes the form XObjects in the immediate resources of the given page,
+     * see {@link #processFormXObject(PDFormXObject, PDPage)}.
+     */
+    public void processFormXObjects(PDPage page) throws IOException {
+        processFormXObjects(page.getResources(), page);
+    }
+
+    /**
+     * <p>
+     * The form XObjects already rewritten, identified by their {@link COSStream}.
+     * Each editor by default has its own set; to rewrite each form XObject of a
+     * document exactly once even if it is used on many pages, share a single set
+     * among the editors of all pages, e.g. one created by {@link #createEditedForms()}.
+     * </p>
+     */
+    public void setEditedForms(Set<COSStream> editedForms) {
+        this.editedForms = editedForms;
+    }
+
+    public Set<COSStream> getEditedForms() {
+        return editedForms;
+    }
+
+    /**
+     * @return an empty set for {@link #setEditedForms(Set)} comparing by identity.
+     */
+    public static Set<COSStream> createEditedForms() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Whether {@link #processFormXObject(PDFormXObject, PDPage)} also processes
+     * the form XObjects in the resources of the form, recursively. By default
+     * it does not.
+     */
+    public void setRecurseIntoForms(boolean recurseIntoForms) {
+        this.recurseIntoForms = recurseIntoForms;
+    }
+
+    public boolean isRecurseIntoForms() {
+        return recurseIntoForms;
+    }
+
+    void processFormXObjects(PDResources resources, PDPage page) throws IOException {
+        if (resources == null)
+            return;
+        for (COSName name : resources.getXObjectNames()) {
+            PDXObject xObject = resources.getXObject(name);
+            if (xObject instanceof PDFormXObject)
+                processFormXObject((PDFormXObject) xObject, page);
+        }
+    }
+
+    void rewriteFormXObject(PDFormXObject formXObject, PDPage page) throws IOException {
         PDStream stream = new PDStream(document);
-        replacement = new ContentStreamWriter(replacementStream = stream.createOutputStream(COSName.FLATE_DECODE));
-        super.processChildStream(formXObject, page);
+        replacement = new ContentStreamWriter(replacementStream = createReplacementStream(stream));
+        interpretedOperators = determineInterpretedOperators();
+        super.processChildStream(passThrough ? startPassThrough(formXObject) : formXObject, page);
         replacementStream.close();
         try (OutputStream outputStream = formXObject.getCOSObject().createOutputStream()) {
             stream.createInputStream().transferTo(outputStream);
         } finally {
             replacement = null;
             replacementStream = null;
+            originalRanges = null;
         }
     }
 
@@ -147,15 +308,179 @@ public class PdfContentStreamEditor extends PDFGraphicsStreamEngine {
             super.processOperator(operator, operands);
         } else {
             inOperator = true;
+            if (originalRanges != null) {
+                if (originalRanges.matches(operatorIndex, operator.getName(), operands.size())) {
+                    originalOperator = operator;
+                    originalOperands = operands;
+                    originalSnapshot = snapshot(operands);
+                    originalIndex = operatorIndex;
+                } else {
+                    // lexer and parser disagree; serialize everything from here on
+                    originalRanges = null;
+                }
+                operatorIndex++;
+            }
             nextOperation(operator, operands);
-            super.processOperator(operator, operands);
+            if (interpretedOperators == null || interpretedOperators.contains(operator.getName()))
+                super.processOperator(operator, operands);
             write(replacement, operator, operands);
+            originalOperator = null;
+            originalOperands = null;
+            originalSnapshot = null;
             inOperator = false;
         }
     }
 
+    // operator selection helpers
+    Set<String> determineInterpretedOperators() {
+        Collection<String> requiredOperators = getRequiredOperators();
+        if (requiredOperators == null)
+            return null;
+        Set<String> operators = new HashSet<>(STATE_OPERATORS);
+        operators.addAll(requiredOperators);
+        return operators;
+    }
+
+    // pass-through helpers
+    OutputStream createReplacementStream(PDStream stream) throws IOException {
+        OutputStream outputStream = stream.createOutputStream(COSName.FLATE_DECODE);
+        return passThrough ? new PassThroughOutputStream(outputStream) : outputStream;
+    }
+
+    /**
+     * An output stream for mixing verbatim copies of original content and
+     * serialized operations, separating them where they would merge otherwise.
+     */
+    static class PassThroughOutputStream extends FilterOutputStream {
+        PassThroughOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        void copy(byte[] data, int start, int end) throws IOException {
+            if (start >= end)
+                return;
+            if (separatorPending && OperatorRanges.isRegular(data[start] & 0xff))
+                out.write('\n');
+            out.write(data, start, end - start);
+            separatorPending = OperatorRanges.isRegular(data[end - 1] & 0xff);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            separate();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            separate();
+            out.write(b, off, len);
+        }
+
+        void separate() throws IOException {
+            if (separatorPending) {
+                out.write('\n');
+                separatorPending = false;
+            }
+        }
+
+        boolean separatorPending = false;
+    }
+
+    /**
+     * Reads the decoded content of the given stream, determines its operation
+     * ranges, and returns a content stream for PDFBox to parse the same bytes.
+     */
+    PDContentStream startPassThrough(PDContentStream contentStream) throws IOException {
+        byte[] bytes;
+        try (InputStream contents = contentStream.getContents()) {
+            bytes = contents.readAllBytes();
+        }
+        originalRanges = new OperatorRanges(bytes);
+        operatorIndex = 0;
+        return new PDContentStream() {
+            @Override
+            public InputStream getContents() throws IOException {
+                return new ByteArrayInputStream(bytes);
+            }
+
+            @Override
+            public PDResources getResources() {
+                return contentStream.getResources();
+            }
+
+            @Override
+            public PDRectangle getBBox() {
+                return contentStream.getBBox();
+            }
+
+            @Override
+            public Matrix getMatrix() {
+                return contentStream.getMatrix();
+            }
+        };
+    }
+
+    static Object[] snapshot(List<COSBase> operands) {
+        Object[] snapshot = new Object[operands.size()];
+        for (int i = 0; i < snapshot.length; i++) {
+            COSBase operand = operands.get(i);
+            snapshot[i] = operand instanceof COSArray ? ((COSArray) operand).toList().toArray() : operand;
+        }
+        return snapshot;
+    }
+
+    boolean isUnchanged(List<COSBase> operands) {
+        if (originalSnapshot == null || operands.size() != originalSnapshot.length)
+            return false;
+        for (int i = 0; i < originalSnapshot.length; i++) {
+            COSBase operand = operands.get(i);
+            Object original = originalSnapshot[i];
+            if (original instanceof Object[]) {
+                if (!(operand instanceof COSArray))
+                    return false;
+                Object[] elements = (Object[]) original;
+                COSArray array = (COSArray) operand;
+                if (array.size() != elements.length)
+                    return false;
+                for (int j = 0; j < elements.length; j++) {
+                    if (array.get(j) != elements[j])
+                        return false;
+                }
+            } else if (operand != original) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The operators which are always processed if {@link #getRequiredOperators()}
+     * restricts processing: the graphics state stack, the current transformation
+     * matrix, the general graphics state, text objects and text state including
+     * the font, and color state.
+     */
+    public static final Set<String> STATE_OPERATORS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "q", "Q", "cm", "gs", "w", "J", "j", "M", "d", "ri", "i",
+            "BT", "ET", "Tc", "Tw", "Tz", "TL", "Tf", "Tr", "Ts", "Td", "TD", "Tm", "T*",
+            "CS", "cs", "SC", "SCN", "sc", "scn", "G", "g", "RG", "rg", "K", "k")));
+
     final PDDocument document;
     OutputStream replacementStream = null;
     ContentStreamWriter replacement = null;
     boolean inOperator = false;
+
+    Set<String> interpretedOperators = null;
+
+    Set<COSStream> editedForms = createEditedForms();
+    boolean recurseIntoForms = false;
+
+    boolean passThrough = false;
+    OperatorRanges originalRanges = null;
+    int operatorIndex = 0;
+    int originalIndex = -1;
+    Operator originalOperator = null;
+    List<COSBase> originalOperands = null;
+    Object[] originalSnapshot = null;
+    int passedThroughCount = 0;
 }
@@ -0,0 +1,135 @@
+package mkl.testarea.pdfbox2.content;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.pdfwriter.ContentStreamWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.util.Matrix;
+import org.apache.pdfbox.util.Vector;
+
+/**
+ * <p>
+ * This {@link PdfContentStreamEditor} applies a number of editing stages
+ * in a single parse. Each operation flows through the stages in the order
+ * they have been added: a stage may forward it (changed or not) to the next
+ * stage, forward other operations instead or in addition, or drop it. What
+ * the last stage forwards is written, once per page.
+ * </p>
+ * <p>
+ * All stages see the graphics state of the editor, i.e. the state the
+ * original content stream results in. Thus, chaining stages is equivalent
+ * to running separate editors one after the other as long as the earlier
+ * stages do not change the state the later stages depend on.
+ * </p>
+ * <p>
+ * This replaces N parse and serialization cycles for N editing steps by one.
+ * </p>
+ *
+ * @author mkl
+ */
+public class PdfContentStreamEditorPipeline extends PdfContentStreamEditor {
+    /**
+     * The receiver of the operations a stage forwards.
+     */
+    public interface OperationWriter {
+        public void write(Operator operator, List<COSBase> operands) throws IOException;
+    }
+
+    /**
+     * An editing stage, the counterpart of a {@link PdfContentStreamEditor} subclass.
+     */
+    public interface Stage {
+        /**
+         * @see PdfContentStreamEditor#nextOperation(Operator, List)
+         */
+        public default void nextOperation(PdfContentStreamEditor editor, Operator operator, List<COSBase> operands) {
+        }
+
+        /**
+         * Called for each glyph shown, before the corresponding text showing operation is written.
+         */
+        public default void showGlyph(PdfContentStreamEditor editor, Matrix textRenderingMatrix, PDFont font, int code, Vector displacement) throws IOException {
+        }
+
+        /**
+         * @see PdfContentStreamEditor#write(ContentStreamWriter, Operator, List)
+         */
+        public void write(PdfContentStreamEditor editor, OperationWriter next, Operator operator, List<COSBase> operands) throws IOException;
+
+        /**
+         * @see PdfContentStreamEditor#getRequiredOperators()
+         */
+        public default Collection<String> getRequiredOperators() {
+            return null;
+        }
+    }
+
+    public PdfContentStreamEditorPipeline(PDDocument document, PDPage page) {
+        super(document, page);
+        writers.add((operator, operands) -> super.write(currentWriter, operator, operands));
+    }
+
+    public PdfContentStreamEditorPipeline addStage(Stage stage) {
+        stages.add(stage);
+        int index = stages.size() - 1;
+        writers.add(index, (operator, operands) -> stages.get(index).write(this, writers.get(index + 1), operator, operands));
+        return this;
+    }
+
+    public List<Stage> getStages() {
+        return stages;
+    }
+
+    @Override
+    protected void nextOperation(Operator operator, List<COSBase> operands) {
+        for (Stage stage : stages)
+            stage.nextOperation(this, operator, operands);
+    }
+
+    @Override
+    protected void showGlyph(Matrix textRenderingMatrix, PDFont font, int code, Vector displacement) throws IOException {
+        for (Stage stage : stages)
+            stage.showGlyph(this, textRenderingMatrix, font, code, displacement);
+        super.showGlyph(textRenderingMatrix, font, code, displacement);
+    }
+
+    @Override
+    protected void write(ContentStreamWriter contentStreamWriter, Operator operator, List<COSBase> operands) throws IOException {
+        ContentStreamWriter previous = currentWriter;
+        currentWriter = contentStreamWriter;
+        try {
+            writers.get(0).write(operator, operands);
+        } finally {
+            currentWriter = previous;
+        }
+    }
+
+    /**
+     * Returns the union of the operators required by the stages, or <code>null</code>
+     * if any stage requires all operators.
+     */
+    @Override
+    protected Collection<String> getRequiredOperators() {
+        Set<String> operators = new HashSet<>();
+        for (Stage stage : stages) {
+            Collection<String> stageOperators = stage.getRequiredOperators();
+            if (stageOperators == null)
+                return null;
+            operators.addAll(stageOperators);
+        }
+        return operators;
+    }
+
+    final List<Stage> stages = new ArrayList<>();
+    final List<OperationWriter> writers = new ArrayList<>();
+    ContentStreamWriter currentWriter = null;
+}
@@ -0,0 +1,115 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.awt.geom.Area;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * <p>
+ * This class speeds up repeated point and small rectangle checks against
+ * an {@link Area}, e.g. the glyph origin checks against the current clip
+ * path in {@link PDFVisibleTextStripper}.
+ * </p>
+ * <p>
+ * Rectangular areas are checked arithmetically. For other areas, once the
+ * area has been queried more than {@link #GRID_THRESHOLD} times, a grid
+ * over its bounds is built in which each cell is classified as completely
+ * inside, completely outside, or on the boundary of the area. Only points
+ * in boundary cells still have to be checked against the area itself. The
+ * classification uses cells slightly enlarged, so the results are exactly
+ * those of the {@link Area} methods.
+ * </p>
+ *
+ * @author mkl
+ */
+class AreaIndex {
+    AreaIndex(Area area) {
+        this.area = area;
+        this.bounds = area.getBounds2D();
+        this.rectangle = area.isRectangular() ? bounds : null;
+    }
+
+    /**
+     * @see Area#contains(double, double)
+     */
+    boolean contains(double x, double y) {
+        if (rectangle != null)
+            return rectangle.contains(x, y);
+        if (!bounds.contains(x, y))
+            return false;
+        if (cells == null && ++queries > GRID_THRESHOLD)
+            buildGrid();
+        if (cells != null) {
+            byte cell = cells[cellIndex(x, y)];
+            if (cell != BOUNDARY)
+                return cell == INSIDE;
+        }
+        return area.contains(x, y);
+    }
+
+    /**
+     * @see Area#intersects(double, double, double, double)
+     */
+    boolean intersects(double x, double y, double w, double h) {
+        if (rectangle != null)
+            return rectangle.intersects(x, y, w, h);
+        if (!bounds.intersects(x, y, w, h))
+            return false;
+        if (cells == null && ++queries > GRID_THRESHOLD)
+            buildGrid();
+        if (cells != null) {
+            int index = cellIndex(x, y);
+            if (index == cellIndex(x + w, y + h)) {
+                byte cell = cells[index];
+                if (cell == OUTSIDE)
+                    return false;
+                if (cell == INSIDE && w > 0 && h > 0)
+                    return true;
+            }
+        }
+        return area.intersects(x, y, w, h);
+    }
+
+    void buildGrid() {
+        cellWidth = bounds.getWidth() / GRID_SIZE;
+        cellHeight = bounds.getHeight() / GRID_SIZE;
+        double marginX = cellWidth / 1000, marginY = cellHeight / 1000;
+        cells = new byte[GRID_SIZE * GRID_SIZE];
+        for (int row = 0; row < GRID_SIZE; row++) {
+            for (int column = 0; column < GRID_SIZE; column++) {
+                double x = bounds.getMinX() + column * cellWidth - marginX;
+                double y = bounds.getMinY() + row * cellHeight - marginY;
+                double w = cellWidth + 2 * marginX, h = cellHeight + 2 * marginY;
+                byte cell;
+                if (area.contains(x, y, w, h))
+                    cell = INSIDE;
+                else if (!area.intersects(x, y, w, h))
+                    cell = OUTSIDE;
+                else
+                    cell = BOUNDARY;
+                cells[row * GRID_SIZE + column] = cell;
+            }
+        }
+    }
+
+    int cellIndex(double x, double y) {
+        int column = (int) ((x - bounds.getMinX()) / cellWidth);
+        int row = (int) ((y - bounds.getMinY()) / cellHeight);
+        column = column < 0 ? 0 : column >= GRID_SIZE ? GRID_SIZE - 1 : column;
+        row = row < 0 ? 0 : row >= GRID_SIZE ? GRID_SIZE - 1 : row;
+        return row * GRID_SIZE + column;
+    }
+
+    final static int GRID_SIZE = 16;
+    final static int GRID_THRESHOLD = 32;
+    final static byte BOUNDARY = 0;
+    final static byte INSIDE = 1;
+    final static byte OUTSIDE = 2;
+
+    final Area area;
+    final Rectangle2D bounds;
+    final Rectangle2D rectangle;
+    int queries = 0;
+    byte[] cells = null;
+    double cellWidth;
+    double cellHeight;
+}
@@ -1,26 +1,14 @@
 package mkl.testarea.pdfbox2.extract;
 
-import java.awt.Shape;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.util.Arrays;
 
-import org.apache.fontbox.util.BoundingBox;
 import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.font.PDCIDFontType2;
 import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.pdmodel.font.PDSimpleFont;
-import org.apache.pdfbox.pdmodel.font.PDTrueTypeFont;
-import org.apache.pdfbox.pdmodel.font.PDType0Font;
-import org.apache.pdfbox.pdmodel.font.PDType3CharProc;
-import org.apache.pdfbox.pdmodel.font.PDType3Font;
-import org.apache.pdfbox.pdmodel.font.PDVectorFont;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
 import org.apache.pdfbox.util.Matrix;
 import org.apache.pdfbox.util.Vector;
@@ -56,85 +44,12 @@ public class BoundingBoxFinder extends PDFGraphicsStreamEngine {
     protected void showGlyph(Matrix textRenderingMatrix, PDFont font, int code, Vector displacement)
             throws IOException {
         super.showGlyph(textRenderingMatrix, font, code, displacement);
-        Shape shape = calculateGlyphBounds(textRenderingMatrix, font, code);
-        if (shape != null) {
-            Rectangle2D rect = shape.getBounds2D();
+        Rectangle2D rect = GlyphBoundsCache.DEFAULT.getBounds(textRenderingMatrix, font, code);
+        if (rect != null) {
             add(rect);
         }
     }
 
-    /**
-     * Copy of <code>org.apache.pdfbox.examples.util.DrawPrintTextLocations.calculateGlyphBounds(Matrix, PDFont, int)</code>.
-     */
-    private Shape calculateGlyphBounds(Matrix textRenderingMatrix, PDFont font, int code) throws IOException
-    {
-        GeneralPath path = null;
-        AffineTransform at = textRenderingMatrix.createAffineTransform();
-        at.concatenate(font.getFontMatrix().createAffineTransform());
-        if (font instanceof PDType3Font)
-        {
-            // It is difficult to calculate the real individual glyph bounds for type 3 fonts
-            // because these are not vector fonts, the content stream could contain almost anything
-            // that is found in page content streams.
-            PDType3Font t3Font = (PDType3Font) font;
-            PDType3CharProc charProc = t3Font.getCharProc(code);
-            if (charProc != null)
-            {
-                BoundingBox fontBBox = t3Font.getBoundingBox();
-                PDRectangle glyphBBox = charProc.getGlyphBBox();
-                if (glyphBBox != null)
-                {
-                    // PDFBOX-3850: glyph bbox could be larger than the font bbox
-                    glyphBBox.setLowerLeftX(Math.max(fontBBox.getLowerLeftX(), glyphBBox.getLowerLeftX()));
-                    glyphBBox.setLowerLeftY(Math.max(fontBBox.getLowerLeftY(), glyphBBox.getLowerLeftY()));
-                    glyphBBox.setUpperRightX(Math.min(fontBBox.getUpperRightX(), glyphBBox.getUpperRightX()));
-                    glyphBBox.setUpperRightY(Math.min(fontBBox.getUpperRightY(), glyphBBox.getUpperRightY()));
-                    path = glyphBBox.toGeneralPath();
-                }
-            }
-        }
-        else if (font instanceof PDVectorFont)
-        {
-            PDVectorFont vectorFont = (PDVectorFont) font;
-            path = vectorFont.getPath(code);
-
-            if (font instanceof PDTrueTypeFont)
-            {
-                PDTrueTypeFont ttFont = (PDTrueTypeFont) font;
-                int unitsPerEm = ttFont.getTrueTypeFont().getHeader().getUnitsPerEm();
-                at.scale(1000d / unitsPerEm, 1000d / unitsPerEm);
-            }
-            if (font instanceof PDType0Font)
-            {
-                PDType0Font t0font = (PDType0Font) font;
-                if (t0font.getDescendantFont() instanceof PDCIDFontType2)
-                {
-                    int unitsPerEm = ((PDCIDFontType2) t0font.getDescendantFont()).getTrueTypeFont().getHeader().getUnitsPerEm();
-                    at.scale(1000d / unitsPerEm, 1000d / unitsPerEm);
-                }
-            }
-        }
-        else if (font instanceof PDSimpleFont)
-        {
-            PDSimpleFont simpleFont = (PDSimpleFont) font;
-
-            // these two lines do not always work, e.g. for the TT fonts in file 032431.pdf
-            // which is why PDVectorFont is tried first.
-            String name = simpleFont.getEncoding().getName(code);
-            path = simpleFont.getPath(name);
-        }
-        else
-        {
-            // shouldn't happen, please open issue in JIRA
-            System.out.println("Unknown font class: " + font.getClass());
-        }
-        if (path == null)
-        {
-            return null;
-        }
-        return at.createTransformedShape(path.getBounds2D());
-    }
-
     //
     // Bitmaps
     //
@@ -0,0 +1,145 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
+
+/**
+ * <p>
+ * This class determines the current clip path of a graphics state as a
+ * plain rectangle as long as all the clip paths intersected into it are
+ * axis aligned rectangles, the usual case of <code>re W n</code> clips.
+ * The rectangles are intersected arithmetically, so the expensive
+ * {@link java.awt.geom.Area} based {@link PDGraphicsState#getCurrentClippingPath()}
+ * only needs to be used for clips with true non-rectangular geometry.
+ * </p>
+ * <p>
+ * {@link PDGraphicsState} only ever appends to its list of clip paths (or
+ * replaces it by a new list), so the result for a list instance and size
+ * is cached and further appended rectangles are intersected incrementally.
+ * </p>
+ * <p>
+ * The counters tell how often a rectangle has been intersected arithmetically
+ * and how often a clip state had to fall back to the {@link java.awt.geom.Area}.
+ * </p>
+ *
+ * @author mkl
+ */
+public class ClipRectangleTracker {
+    /**
+     * Returns the current clip path of the given graphics state as rectangle
+     * or <code>null</code> if it is not rectangular; in the latter case use
+     * {@link PDGraphicsState#getCurrentClippingPath()}.
+     */
+    public Rectangle2D getClipRectangle(PDGraphicsState graphicsState) {
+        List<Path2D> paths = graphicsState.getCurrentClippingPaths();
+        int size = paths.size();
+        if (paths == lastPaths && size == lastSize)
+            return lastRectangle;
+
+        Rectangle2D rectangle = null;
+        int index = 0;
+        if (paths == lastPaths && size > lastSize) {
+            if (lastRectangle == null) {
+                lastSize = size;
+                areaFallbacks++;
+                return null;
+            }
+            rectangle = lastRectangle;
+            index = lastSize;
+        }
+
+        for (; index < size; index++) {
+            Rectangle2D pathRectangle = toRectangle(paths.get(index));
+            if (pathRectangle == null) {
+                rectangle = null;
+                areaFallbacks++;
+                break;
+            }
+            rectangle = rectangle == null ? pathRectangle : rectangle.createIntersection(pathRectangle);
+            rectangleIntersections++;
+        }
+
+        lastPaths = paths;
+        lastSize = size;
+        lastRectangle = rectangle;
+        return rectangle;
+    }
+
+    /**
+     * Returns how often a clip path rectangle has been intersected arithmetically.
+     */
+    public long getRectangleIntersections() {
+        return rectangleIntersections;
+    }
+
+    /**
+     * Returns how often a clip state has been found not to be rectangular,
+     * i.e. how often the {@link java.awt.geom.Area} based clip path had to be used.
+     */
+    public long getAreaFallbacks() {
+        return areaFallbacks;
+    }
+
+    /**
+     * Returns the path as rectangle if it consists of a single axis aligned
+     * rectangular sub path, otherwise <code>null</code>. For such paths the
+     * winding rule plays no role.
+     */
+    static Rectangle2D toRectangle(Path2D path) {
+        PathIterator iterator = path.getPathIterator(null);
+        double[] coordinates = new double[6];
+        double[] x = new double[5];
+        double[] y = new double[5];
+        int points = 0;
+        boolean closed = false;
+        for (; !iterator.isDone(); iterator.next()) {
+            int type = iterator.currentSegment(coordinates);
+            if (closed)
+                return null;
+            switch (type) {
+            case PathIterator.SEG_MOVETO:
+                if (points != 0)
+                    return null;
+                break;
+            case PathIterator.SEG_LINETO:
+                if (points == 0 || points == 5)
+                    return null;
+                break;
+            case PathIterator.SEG_CLOSE:
+                closed = true;
+                continue;
+            default:
+                return null;
+            }
+            x[points] = coordinates[0];
+            y[points] = coordinates[1];
+            points++;
+        }
+
+        if (points == 5) {
+            if (x[4] != x[0] || y[4] != y[0])
+                return null;
+        } else if (points != 4)
+            return null;
+
+        boolean horizontalFirst = y[1] == y[0] && x[2] == x[1] && y[3] == y[2] && x[3] == x[0];
+        boolean verticalFirst = x[1] == x[0] && y[2] == y[1] && x[3] == x[2] && y[3] == y[0];
+        if (!horizontalFirst && !verticalFirst)
+            return null;
+
+        double minX = Math.min(x[0], x[2]), maxX = Math.max(x[0], x[2]);
+        double minY = Math.min(y[0], y[2]), maxY = Math.max(y[0], y[2]);
+        return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    List<Path2D> lastPaths = null;
+    int lastSize = 0;
+    Rectangle2D lastRectangle = null;
+
+    long rectangleIntersections = 0;
+    long areaFallbacks = 0;
+}
@@ -1,11 +1,15 @@
 package mkl.testarea.pdfbox2.extract;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
+import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
 import org.apache.pdfbox.pdmodel.graphics.state.RenderingMode;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.pdfbox.text.TextPosition;
@@ -21,6 +25,12 @@ import org.apache.pdfbox.text.TextPosition;
  * </a>
  * to PDFBox 2.
  * </p>
+ * <p>
+ * The rendering mode and colors of the glyphs of the current page are
+ * stored in primitive columns indexed by glyph ordinal, the colors as
+ * slots of interned color descriptions, so processing a glyph does not
+ * allocate anything as long as the colors do not change.
+ * </p>
  * 
  * @author mkl
  */
@@ -45,61 +55,155 @@ public class ColorTextStripper extends PDFTextStripper
         addOperator(new org.apache.pdfbox.contentstream.operator.color.SetNonStrokingDeviceCMYKColor());
     }
 
+    /**
+     * Clears the glyph attributes of the previous page.
+     */
+    @Override
+    protected void startPage(PDPage page) throws IOException
+    {
+        Arrays.fill(glyphs, 0, glyphCount, null);
+        Arrays.fill(glyphTable, 0);
+        glyphCount = 0;
+        colorSlots.clear();
+        fillFragments.clear();
+        strokeFragments.clear();
+        lastStrokingColor = null;
+        lastNonStrokingColor = null;
+
+        super.startPage(page);
+    }
+
     @Override
     protected void processTextPosition(TextPosition text)
     {
-        renderingMode.put(text, getGraphicsState().getTextState().getRenderingMode());
-        strokingColor.put(text, getGraphicsState().getStrokingColor().getComponents());
-        nonStrokingColor.put(text, getGraphicsState().getNonStrokingColor().getComponents());
+        PDGraphicsState graphicsState = getGraphicsState();
+
+        PDColor color = graphicsState.getStrokingColor();
+        if (color != lastStrokingColor)
+        {
+            lastStrokingColor = color;
+            lastStrokingSlot = intern(color.getComponents());
+        }
+        color = graphicsState.getNonStrokingColor();
+        if (color != lastNonStrokingColor)
+        {
+            lastNonStrokingColor = color;
+            lastNonStrokingSlot = intern(color.getComponents());
+        }
+
+        addGlyph(text, graphicsState.getTextState().getRenderingMode(), lastStrokingSlot, lastNonStrokingSlot);
 
         super.processTextPosition(text);
     }
 
-    Map<TextPosition, RenderingMode> renderingMode = new HashMap<TextPosition, RenderingMode>();
-    Map<TextPosition, float[]> strokingColor = new HashMap<TextPosition, float[]>();
-    Map<TextPosition, float[]> nonStrokingColor = new HashMap<TextPosition, float[]>();
-
     final static List<RenderingMode> FILLING_MODES = Arrays.asList(RenderingMode.FILL, RenderingMode.FILL_STROKE, RenderingMode.FILL_CLIP, RenderingMode.FILL_STROKE_CLIP);
     final static List<RenderingMode> STROKING_MODES = Arrays.asList(RenderingMode.STROKE, RenderingMode.FILL_STROKE, RenderingMode.STROKE_CLIP, RenderingMode.FILL_STROKE_CLIP);
     final static List<RenderingMode> CLIPPING_MODES = Arrays.asList(RenderingMode.FILL_CLIP, RenderingMode.STROKE_CLIP, RenderingMode.FILL_STROKE_CLIP, RenderingMode.NEITHER_CLIP);
 
+    /**
+     * Writes the characters with their color information directly to the
+     * output, using the color descriptions pre-formatted when interning.
+     */
     @Override
     protected void writeString(String text, List<TextPosition> textPositions) throws IOException
     {
         for (TextPosition textPosition: textPositions)
         {
-            RenderingMode charRenderingMode = renderingMode.get(textPosition);
-            float[] charStrokingColor = strokingColor.get(textPosition);
-            float[] charNonStrokingColor = nonStrokingColor.get(textPosition);
+            int glyph = findGlyph(textPosition);
+            RenderingMode charRenderingMode = glyph < 0 ? null : RENDERING_MODES[renderingModes[glyph]];
 
-            StringBuilder textBuilder = new StringBuilder();
-            textBuilder.append(textPosition.getUnicode())
-                       .append("{");
+            writeString(textPosition.getUnicode());
+            writeString("{");
 
             if (FILLING_MODES.contains(charRenderingMode))
             {
-                textBuilder.append("FILL:")
-                           .append(toString(charNonStrokingColor))
-                           .append(';');
+                writeString(fillFragments.get(nonStrokingColors[glyph]));
             }
             
             if (STROKING_MODES.contains(charRenderingMode))
             {
-                textBuilder.append("STROKE:")
-                           .append(toString(charStrokingColor))
-                           .append(';');
+                writeString(strokeFragments.get(strokingColors[glyph]));
             }
 
             if (CLIPPING_MODES.contains(charRenderingMode))
             {
-                textBuilder.append("CLIP;");
+                writeString("CLIP;");
             }
 
-            textBuilder.append("}");
-            writeString(textBuilder.toString());
+            writeString("}");
         }
     }
 
+    /**
+     * Returns the slot of the given color components, creating it if need be.
+     * Identical colors share one slot.
+     */
+    int intern(float[] components)
+    {
+        String description = toString(components);
+        Integer slot = colorSlots.get(description);
+        if (slot == null)
+        {
+            slot = fillFragments.size();
+            colorSlots.put(description, slot);
+            fillFragments.add("FILL:" + description + ';');
+            strokeFragments.add("STROKE:" + description + ';');
+        }
+        return slot;
+    }
+
+    void addGlyph(TextPosition text, RenderingMode mode, int strokingSlot, int nonStrokingSlot)
+    {
+        if (glyphCount == glyphs.length)
+        {
+            int capacity = glyphs.length * 2;
+            glyphs = Arrays.copyOf(glyphs, capacity);
+            renderingModes = Arrays.copyOf(renderingModes, capacity);
+            strokingColors = Arrays.copyOf(strokingColors, capacity);
+            nonStrokingColors = Arrays.copyOf(nonStrokingColors, capacity);
+            glyphTable = new int[capacity * 2];
+            for (int glyph = 0; glyph < glyphCount; glyph++)
+                insertGlyph(glyph);
+        }
+        int glyph = glyphCount++;
+        glyphs[glyph] = text;
+        renderingModes[glyph] = (byte) mode.ordinal();
+        strokingColors[glyph] = strokingSlot;
+        nonStrokingColors[glyph] = nonStrokingSlot;
+        insertGlyph(glyph);
+    }
+
+    /**
+     * Registers the glyph ordinal in the open addressing identity hash table.
+     * Table entries are ordinal + 1, 0 marks an empty entry.
+     */
+    void insertGlyph(int glyph)
+    {
+        int mask = glyphTable.length - 1;
+        int index = System.identityHashCode(glyphs[glyph]) & mask;
+        while (glyphTable[index] != 0)
+            index = (index + 1) & mask;
+        glyphTable[index] = glyph + 1;
+    }
+
+    /**
+     * Returns the ordinal of the given text position on the current page or
+     * -1 if it has not been processed by this stripper.
+     */
+    int findGlyph(TextPosition text)
+    {
+        int mask = glyphTable.length - 1;
+        int index = System.identityHashCode(text) & mask;
+        int entry;
+        while ((entry = glyphTable[index]) != 0)
+        {
+            if (glyphs[entry - 1] == text)
+                return entry - 1;
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
     String toString(float[] values)
     {
         if (values == null)
@@ -124,5 +228,26 @@ public class ColorTextStripper extends PDFTextStripper
 
         return builder.toString();
     }
-    
+
+    final static int INITIAL_CAPACITY = 1024;
+    final static RenderingMode[] RENDERING_MODES = RenderingMode.values();
+
+    /*
+     * The per page glyph attributes in columns indexed by glyph ordinal;
+     * the colors are given as slots of the interned color descriptions.
+     */
+    TextPosition[] glyphs = new TextPosition[INITIAL_CAPACITY];
+    byte[] renderingModes = new byte[INITIAL_CAPACITY];
+    int[] strokingColors = new int[INITIAL_CAPACITY];
+    int[] nonStrokingColors = new int[INITIAL_CAPACITY];
+    int[] glyphTable = new int[2 * INITIAL_CAPACITY];
+    int glyphCount = 0;
+
+    final Map<String, Integer> colorSlots = new HashMap<String, Integer>();
+    final List<String> fillFragments = new ArrayList<String>();
+    final List<String> strokeFragments = new ArrayList<String>();
+    PDColor lastStrokingColor = null;
+    int lastStrokingSlot;
+    PDColor lastNonStrokingColor = null;
+    int lastNonStrokingSlot;
 }
@@ -0,0 +1,204 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A {@link GlyphRunSink} which encodes the glyphs it receives in a compact
+ * binary columnar format, one block per page, for ingestion by indexing
+ * tools without a text round trip. {@link #decode(InputStream, GlyphRunSink)}
+ * replays such an encoding into another sink.
+ * </p>
+ * <p>
+ * The format is big endian (as written by {@link DataOutputStream}): the
+ * magic <code>GLYC</code> and a version byte, followed by records each
+ * starting with a type byte:
+ * </p>
+ * <ul>
+ * <li><code>'F'</code>: font id (int), font name (modified UTF-8, empty if unknown);
+ * <li><code>'P'</code>: page number (int), glyph count <i>n</i> (int), code point
+ * count <i>m</i> (int), then the columns x, y, width, height (<i>n</i> floats each),
+ * font id (<i>n</i> ints), code points per glyph (<i>n</i> bytes, at most 255),
+ * and code points (<i>m</i> ints);
+ * <li><code>'E'</code>: end of data.
+ * </ul>
+ *
+ * @author mkl
+ */
+public class ColumnarGlyphEncoder implements GlyphRunSink {
+    public final static byte[] MAGIC = {'G', 'L', 'Y', 'C'};
+    public final static byte VERSION = 1;
+
+    public ColumnarGlyphEncoder(OutputStream outputStream) throws IOException {
+        this.output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        output.write(MAGIC);
+        output.writeByte(VERSION);
+    }
+
+    /**
+     * Writes the end record and flushes the output; the underlying stream is not closed.
+     */
+    public void finish() throws IOException {
+        output.writeByte('E');
+        output.flush();
+    }
+
+    @Override
+    public void font(int fontId, String fontName) throws IOException {
+        output.writeByte('F');
+        output.writeInt(fontId);
+        output.writeUTF(fontName != null ? fontName : "");
+    }
+
+    @Override
+    public void startPage(int pageNumber) throws IOException {
+        count = 0;
+        codePointCount = 0;
+    }
+
+    @Override
+    public void glyphRun(int count, int[] codePoints, int[] codePointStarts, float[] x, float[] y, float[] widths,
+            float[] heights, int[] fontIds) throws IOException {
+        ensureCapacity(this.count + count, codePointCount + codePointStarts[count] - codePointStarts[0]);
+        System.arraycopy(x, 0, this.x, this.count, count);
+        System.arraycopy(y, 0, this.y, this.count, count);
+        System.arraycopy(widths, 0, this.widths, this.count, count);
+        System.arraycopy(heights, 0, this.heights, this.count, count);
+        System.arraycopy(fontIds, 0, this.fontIds, this.count, count);
+        for (int i = 0; i < count; i++)
+            codePointCounts[this.count + i] = (byte) Math.min(255, codePointStarts[i + 1] - codePointStarts[i]);
+        for (int i = 0; i < count; i++) {
+            int from = codePointStarts[i];
+            int length = (codePointCounts[this.count + i] & 0xff);
+            System.arraycopy(codePoints, from, this.codePoints, codePointCount, length);
+            codePointCount += length;
+        }
+        this.count += count;
+    }
+
+    @Override
+    public void endPage(int pageNumber) throws IOException {
+        output.writeByte('P');
+        output.writeInt(pageNumber);
+        output.writeInt(count);
+        output.writeInt(codePointCount);
+        writeFloats(x, count);
+        writeFloats(y, count);
+        writeFloats(widths, count);
+        writeFloats(heights, count);
+        writeInts(fontIds, count);
+        output.write(codePointCounts, 0, count);
+        writeInts(codePoints, codePointCount);
+        count = 0;
+        codePointCount = 0;
+    }
+
+    /**
+     * Replays the encoded glyphs into the given sink, each page as a single glyph run.
+     */
+    public static void decode(InputStream inputStream, GlyphRunSink sink) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+        byte[] magic = new byte[MAGIC.length];
+        input.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic))
+            throw new IOException("Not a columnar glyph encoding");
+        byte version = input.readByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported columnar glyph encoding version " + version);
+
+        while (true) {
+            int type;
+            try {
+                type = input.readByte();
+            } catch (EOFException e) {
+                throw new IOException("Columnar glyph encoding ends without end record", e);
+            }
+            switch (type) {
+            case 'F':
+                sink.font(input.readInt(), input.readUTF());
+                break;
+            case 'P':
+                int pageNumber = input.readInt();
+                int count = input.readInt();
+                int codePointCount = input.readInt();
+                float[] x = readFloats(input, count);
+                float[] y = readFloats(input, count);
+                float[] widths = readFloats(input, count);
+                float[] heights = readFloats(input, count);
+                int[] fontIds = readInts(input, count);
+                int[] codePointStarts = new int[count + 1];
+                for (int i = 0; i < count; i++)
+                    codePointStarts[i + 1] = codePointStarts[i] + input.readUnsignedByte();
+                int[] codePoints = readInts(input, codePointCount);
+                sink.startPage(pageNumber);
+                if (count > 0)
+                    sink.glyphRun(count, codePoints, codePointStarts, x, y, widths, heights, fontIds);
+                sink.endPage(pageNumber);
+                break;
+            case 'E':
+                return;
+            default:
+                throw new IOException("Unknown columnar glyph encoding record type " + type);
+            }
+        }
+    }
+
+    //
+    // helpers
+    //
+    void ensureCapacity(int glyphs, int codePoints) {
+        if (glyphs > x.length) {
+            int capacity = Math.max(glyphs, 2 * x.length);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            widths = Arrays.copyOf(widths, capacity);
+            heights = Arrays.copyOf(heights, capacity);
+            fontIds = Arrays.copyOf(fontIds, capacity);
+            codePointCounts = Arrays.copyOf(codePointCounts, capacity);
+        }
+        if (codePoints > this.codePoints.length)
+            this.codePoints = Arrays.copyOf(this.codePoints, Math.max(codePoints, 2 * this.codePoints.length));
+    }
+
+    void writeFloats(float[] values, int count) throws IOException {
+        for (int i = 0; i < count; i++)
+            output.writeFloat(values[i]);
+    }
+
+    void writeInts(int[] values, int count) throws IOException {
+        for (int i = 0; i < count; i++)
+            output.writeInt(values[i]);
+    }
+
+    static float[] readFloats(DataInputStream input, int count) throws IOException {
+        float[] values = new float[count];
+        for (int i = 0; i < count; i++)
+            values[i] = input.readFloat();
+        return values;
+    }
+
+    static int[] readInts(DataInputStream input, int count) throws IOException {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++)
+            values[i] = input.readInt();
+        return values;
+    }
+
+    final DataOutputStream output;
+    int count = 0;
+    int codePointCount = 0;
+    float[] x = new float[256];
+    float[] y = new float[256];
+    float[] widths = new float[256];
+    float[] heights = new float[256];
+    int[] fontIds = new int[256];
+    byte[] codePointCounts = new byte[256];
+    int[] codePoints = new int[256];
+}
@@ -0,0 +1,176 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import mkl.testarea.pdfbox2.util.PageRangeExecution;
+import mkl.testarea.pdfbox2.util.PageRangeExecution.DocumentLoader;
+
+/**
+ * <a href="https://stackoverflow.com/questions/72086776/find-blank-spacerectangle-for-signature-field-using-pdfbox">
+ * Find blank space(rectangle) for signature field using PDFBox
+ * </a>
+ * <p>
+ * This class applies the {@link FreeSpaceFinder} to a range of pages of
+ * a document, processing multiple pages concurrently on a given executor.
+ * </p>
+ * <p>
+ * As PDFBox documents are not thread safe, the document is given as file
+ * or byte array and each of the <code>parallelism</code> worker tasks (a
+ * positive number) loads its own {@link PDDocument} instance from it. The
+ * pages of the range are distributed round-robin among the workers, so the
+ * pages at the start of the range are processed first; this keeps the latency of
+ * {@link #findFirstFit(File, int, int, ExecutorService, int)} low.
+ * </p>
+ *
+ * @author mkl
+ */
+public class DocumentFreeSpaceFinder {
+    public DocumentFreeSpaceFinder(float minWidth, float minHeight) {
+        this.minWidth = minWidth;
+        this.minHeight = minHeight;
+    }
+
+    /**
+     * Receives the free spaces of each page as soon as that page is processed.
+     * Beware, this is called from the worker threads.
+     */
+    public interface PageListener {
+        void pageProcessed(int pageIndex, Collection<Rectangle2D> freeSpaces);
+    }
+
+    /**
+     * A free space on a specific page.
+     */
+    public static class PageSpace {
+        PageSpace(int pageIndex, Rectangle2D space) {
+            this.pageIndex = pageIndex;
+            this.space = space;
+        }
+
+        public int getPageIndex() {
+            return pageIndex;
+        }
+
+        public Rectangle2D getSpace() {
+            return space;
+        }
+
+        final int pageIndex;
+        final Rectangle2D space;
+    }
+
+    /**
+     * Determines the free spaces of the pages from <code>fromPage</code> (inclusive)
+     * to <code>toPage</code> (exclusive), 0-based, and returns them by page index.
+     * If a listener is given, it is informed as soon as each page is processed.
+     */
+    public Map<Integer, Collection<Rectangle2D>> find(File file, int fromPage, int toPage, ExecutorService executor, int parallelism, PageListener listener) throws IOException {
+        return find(() -> PDDocument.load(file), fromPage, toPage, executor, parallelism, listener);
+    }
+
+    /**
+     * @see #find(File, int, int, ExecutorService, int, PageListener)
+     */
+    public Map<Integer, Collection<Rectangle2D>> find(byte[] bytes, int fromPage, int toPage, ExecutorService executor, int parallelism, PageListener listener) throws IOException {
+        return find(() -> PDDocument.load(bytes), fromPage, toPage, executor, parallelism, listener);
+    }
+
+    /**
+     * Determines the first page in the range from <code>fromPage</code> (inclusive)
+     * to <code>toPage</code> (exclusive), 0-based, with a free space of at least the
+     * minimum size, and returns the top-most, left-most such space on it, or
+     * <code>null</code> if there is none. Pages after a page already known to have
+     * a free space are not processed anymore, and the processing of a page stops
+     * as soon as it is clear that it has no such free space.
+     */
+    public PageSpace findFirstFit(File file, int fromPage, int toPage, ExecutorService executor, int parallelism) throws IOException {
+        return findFirstFit(() -> PDDocument.load(file), fromPage, toPage, executor, parallelism);
+    }
+
+    /**
+     * @see #findFirstFit(File, int, int, ExecutorService, int)
+     */
+    public PageSpace findFirstFit(byte[] bytes, int fromPage, int toPage, ExecutorService executor, int parallelism) throws IOException {
+        return findFirstFit(() -> PDDocument.load(bytes), fromPage, toPage, executor, parallelism);
+    }
+
+    Map<Integer, Collection<Rectangle2D>> find(DocumentLoader loader, int fromPage, int toPage, ExecutorService executor, int parallelism, PageListener listener) throws IOException {
+        Map<Integer, Collection<Rectangle2D>> results = new ConcurrentHashMap<>();
+        process(loader, fromPage, toPage, executor, parallelism, new AtomicInteger(toPage), (pageIndex, page) -> {
+            FreeSpaceFinder finder = new FreeSpaceFinder(page, minWidth, minHeight);
+            finder.setBulkMode(true);
+            finder.processPage(page);
+            Collection<Rectangle2D> freeSpaces = new ArrayList<>(finder.getFreeSpaces());
+            results.put(pageIndex, freeSpaces);
+            if (listener != null)
+                listener.pageProcessed(pageIndex, freeSpaces);
+        });
+        return new TreeMap<>(results);
+    }
+
+    /**
+     * Uses the query mode of {@link FreeSpaceFinder#findFirstFit(PDPage, Rectangle2D, float, float)}
+     * for the individual pages.
+     */
+    PageSpace findFirstFit(DocumentLoader loader, int fromPage, int toPage, ExecutorService executor, int parallelism) throws IOException {
+        AtomicInteger limit = new AtomicInteger(toPage);
+        Map<Integer, Rectangle2D> results = new ConcurrentHashMap<>();
+        process(loader, fromPage, toPage, executor, parallelism, limit, (pageIndex, page) -> {
+            Rectangle2D space = FreeSpaceFinder.findFirstFit(page, page.getCropBox().toGeneralPath().getBounds2D(), minWidth, minHeight);
+            if (space != null) {
+                results.put(pageIndex, space);
+                limit.accumulateAndGet(pageIndex, Math::min);
+            }
+        });
+        if (results.isEmpty())
+            return null;
+
+        int pageIndex = limit.get();
+        return new PageSpace(pageIndex, results.get(pageIndex));
+    }
+
+    interface PageAction {
+        void process(int pageIndex, PDPage page) throws IOException;
+    }
+
+    /**
+     * Runs the workers; worker <i>k</i> processes the pages <code>fromPage + k</code>,
+     * <code>fromPage + k + parallelism</code>, ... below the current limit.
+     */
+    void process(DocumentLoader loader, int fromPage, int toPage, ExecutorService executor, int parallelism, AtomicInteger limit, PageAction action) throws IOException {
+        PageRangeExecution.checkThreadCount(parallelism);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int k = 0; k < parallelism && fromPage + k < toPage; k++) {
+            final int firstPage = fromPage + k;
+            futures.add(executor.submit(() -> {
+                try (PDDocument document = loader.load()) {
+                    for (int pageIndex = firstPage; pageIndex < toPage && pageIndex < limit.get(); pageIndex += parallelism) {
+                        if (Thread.currentThread().isInterrupted())
+                            break;
+                        action.process(pageIndex, document.getPage(pageIndex));
+                    }
+                }
+                return null;
+            }));
+        }
+
+        PageRangeExecution.getAll(futures, "determining free spaces");
+    }
+
+    final float minWidth;
+    final float minHeight;
+}
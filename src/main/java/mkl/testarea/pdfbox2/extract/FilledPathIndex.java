@@ -0,0 +1,76 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+/**
+ * <p>
+ * A z-ordered spatial index of filled paths, used to look up the topmost
+ * fill at a given point, e.g. the background of a character in
+ * {@link PdfToTextInfoConverter}.
+ * </p>
+ * <p>
+ * The paths are registered in the cells of a {@link UniformGrid} over the page
+ * which their bounds overlap, in paint order. A lookup only walks the cell
+ * of the point, from the last painted path backwards, pre-filters by the
+ * path bounds, and stops at the first path containing the point. Paths
+ * consisting of a single axis aligned rectangle are checked arithmetically.
+ * </p>
+ *
+ * @author mkl
+ */
+class FilledPathIndex<V> {
+    FilledPathIndex(Rectangle2D bounds) {
+        this.grid = new UniformGrid<>(bounds, GRID_SIZE, GRID_SIZE);
+    }
+
+    /**
+     * Adds a path painted on top of all the paths added before. The path must
+     * not be changed afterwards.
+     */
+    void add(GeneralPath path, V value) {
+        Entry<V> entry = new Entry<>(path, value);
+        grid.add(entry, entry.bounds);
+    }
+
+    /**
+     * Returns the value of the topmost path containing the given point or
+     * <code>null</code> if there is none.
+     */
+    V getTopmost(double x, double y) {
+        List<Entry<V>> cell = grid.getCell(x, y);
+        if (cell == null)
+            return null;
+        for (int i = cell.size() - 1; i >= 0; i--) {
+            Entry<V> entry = cell.get(i);
+            if (entry.contains(x, y))
+                return entry.value;
+        }
+        return null;
+    }
+
+    static class Entry<V> {
+        Entry(GeneralPath path, V value) {
+            this.path = path;
+            this.value = value;
+            this.bounds = path.getBounds2D();
+            this.rectangle = ClipRectangleTracker.toRectangle(path);
+        }
+
+        boolean contains(double x, double y) {
+            if (x < bounds.getMinX() || x > bounds.getMaxX() || y < bounds.getMinY() || y > bounds.getMaxY())
+                return false;
+            return rectangle != null ? rectangle.contains(x, y) : path.contains(x, y);
+        }
+
+        final GeneralPath path;
+        final V value;
+        final Rectangle2D bounds;
+        final Rectangle2D rectangle;
+    }
+
+    final static int GRID_SIZE = 32;
+
+    final UniformGrid<Entry<V>> grid;
+}
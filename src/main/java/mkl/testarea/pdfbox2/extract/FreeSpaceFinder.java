@@ -1,8 +1,5 @@
 package mkl.testarea.pdfbox2.extract;
 
-import java.awt.Shape;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.GeneralPath;
 import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
@@ -10,20 +7,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
-import org.apache.fontbox.util.BoundingBox;
 import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.font.PDCIDFontType2;
 import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.pdmodel.font.PDSimpleFont;
-import org.apache.pdfbox.pdmodel.font.PDTrueTypeFont;
-import org.apache.pdfbox.pdmodel.font.PDType0Font;
-import org.apache.pdfbox.pdmodel.font.PDType3CharProc;
-import org.apache.pdfbox.pdmodel.font.PDType3Font;
-import org.apache.pdfbox.pdmodel.font.PDVectorFont;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
 import org.apache.pdfbox.util.Matrix;
 import org.apache.pdfbox.util.Vector;
@@ -40,6 +30,14 @@ import org.apache.pdfbox.util.Vector;
  * <a href="http://stackoverflow.com/questions/26464324/how-can-i-can-insert-an-image-or-stamp-on-a-pdf-where-there-is-free-space-availa">
  * How can I can insert an image or stamp on a pdf where there is free space available like a density scanner
  * </a>
+ * <p>
+ * The free spaces are kept in a {@link RectangleGrid} so that each used
+ * area only touches the free spaces it overlaps. In bulk mode, see
+ * {@link #setBulkMode(boolean)}, the used areas are collected first and
+ * applied in a single pass. If only a single free space of a given size
+ * in a given region is needed, use the query mode of
+ * {@link #findFirstFit(PDPage, Rectangle2D, float, float)}.
+ * </p>
  * 
  * @author mkl
  */
@@ -60,14 +58,86 @@ public class FreeSpaceFinder extends PDFGraphicsStreamEngine {
 
         this.minWidth = minWidth;
         this.minHeight = minHeight;
-        this.freeSpaces = initialBoxes;
+
+        Rectangle2D bounds = null;
+        for (Rectangle2D initialBox : initialBoxes) {
+            if (bounds == null)
+                bounds = initialBox.getBounds2D();
+            else
+                bounds.add(initialBox);
+        }
+        this.freeSpaces = new RectangleGrid(bounds != null ? bounds : new Rectangle2D.Double(), GRID_SIZE, GRID_SIZE);
+        for (Rectangle2D initialBox : initialBoxes) {
+            freeSpaces.add(initialBox);
+        }
+    }
+
+    //
+    // Query mode
+    //
+    /**
+     * Determines whether there is a free space of at least the given size in the
+     * given search region of the page and, if there is, returns the top-most,
+     * left-most such free space, otherwise <code>null</code>.
+     * <p>
+     * Used spaces outside the search region are ignored right away, and as soon
+     * as no candidate space of the given size is left in the region, content
+     * stream processing is aborted as later content cannot create free space.
+     * </p>
+     */
+    public static Rectangle2D findFirstFit(PDPage page, Rectangle2D searchRegion, float width, float height) throws IOException {
+        if (searchRegion.getWidth() < width || searchRegion.getHeight() < height)
+            return null;
+        FreeSpaceFinder finder = new FreeSpaceFinder(page, searchRegion, width, height);
+        finder.searchRegion = searchRegion;
+        try {
+            if (finder.freeSpaces.size() > 0)
+                finder.processPage(page);
+        } catch (NoFitException e) {
+            return null;
+        }
+
+        Rectangle2D best = null;
+        for (Rectangle2D space : finder.freeSpaces.values()) {
+            if (best == null || space.getMaxY() > best.getMaxY() || (space.getMaxY() == best.getMaxY() && space.getMinX() < best.getMinX()))
+                best = space;
+        }
+        return best;
+    }
+
+    /**
+     * Thrown to abort processing in query mode when no free space of the
+     * requested size is left.
+     */
+    static class NoFitException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        NoFitException() {
+            super("No free space of the requested size left", null, false, false);
+        }
+    }
+
+    //
+    // Configuration
+    //
+    /**
+     * In bulk mode the used spaces found while processing the page are only
+     * collected; they are applied to the free spaces in one pass when those
+     * are requested. This in particular saves the work for used spaces which
+     * are contained in others, e.g. multiply drawn glyphs or paths.
+     */
+    public void setBulkMode(boolean bulkMode) {
+        if (this.bulkMode && !bulkMode)
+            flushUsedSpaces();
+        this.bulkMode = bulkMode;
     }
 
     //
     // Result
     //
     public Collection<Rectangle2D> getFreeSpaces() {
-        return freeSpaces;
+        flushUsedSpaces();
+        return freeSpaces.values();
     }
 
     //
@@ -77,85 +147,12 @@ public class FreeSpaceFinder extends PDFGraphicsStreamEngine {
     protected void showGlyph(Matrix textRenderingMatrix, PDFont font, int code, Vector displacement)
             throws IOException {
         super.showGlyph(textRenderingMatrix, font, code, displacement);
-        Shape shape = calculateGlyphBounds(textRenderingMatrix, font, code);
-        if (shape != null) {
-            Rectangle2D rect = shape.getBounds2D();
+        Rectangle2D rect = GlyphBoundsCache.DEFAULT.getBounds(textRenderingMatrix, font, code);
+        if (rect != null) {
             remove(rect);
         }
     }
 
-    /**
-     * Copy of <code>org.apache.pdfbox.examples.util.DrawPrintTextLocations.calculateGlyphBounds(Matrix, PDFont, int)</code>.
-     */
-    private Shape calculateGlyphBounds(Matrix textRenderingMatrix, PDFont font, int code) throws IOException
-    {
-        GeneralPath path = null;
-        AffineTransform at = textRenderingMatrix.createAffineTransform();
-        at.concatenate(font.getFontMatrix().createAffineTransform());
-        if (font instanceof PDType3Font)
-        {
-            // It is difficult to calculate the real individual glyph bounds for type 3 fonts
-            // because these are not vector fonts, the content stream could contain almost anything
-            // that is found in page content streams.
-            PDType3Font t3Font = (PDType3Font) font;
-            PDType3CharProc charProc = t3Font.getCharProc(code);
-            if (charProc != null)
-            {
-                BoundingBox fontBBox = t3Font.getBoundingBox();
-                PDRectangle glyphBBox = charProc.getGlyphBBox();
-                if (glyphBBox != null)
-                {
-                    // PDFBOX-3850: glyph bbox could be larger than the font bbox
-                    glyphBBox.setLowerLeftX(Math.max(fontBBox.getLowerLeftX(), glyphBBox.getLowerLeftX()));
-                    glyphBBox.setLowerLeftY(Math.max(fontBBox.getLowerLeftY(), glyphBBox.getLowerLeftY()));
-                    glyphBBox.setUpperRightX(Math.min(fontBBox.getUpperRightX(), glyphBBox.getUpperRightX()));
-                    glyphBBox.setUpperRightY(Math.min(fontBBox.getUpperRightY(), glyphBBox.getUpperRightY()));
-                    path = glyphBBox.toGeneralPath();
-                }
-            }
-        }
-        else if (font instanceof PDVectorFont)
-        {
-            PDVectorFont vectorFont = (PDVectorFont) font;
-            path = vectorFont.getPath(code);
-
-            if (font instanceof PDTrueTypeFont)
-            {
-                PDTrueTypeFont ttFont = (PDTrueTypeFont) font;
-                int unitsPerEm = ttFont.getTrueTypeFont().getHeader().getUnitsPerEm();
-                at.scale(1000d / unitsPerEm, 1000d / unitsPerEm);
-            }
-            if (font instanceof PDType0Font)
-            {
-                PDType0Font t0font = (PDType0Font) font;
-                if (t0font.getDescendantFont() instanceof PDCIDFontType2)
-                {
-                    int unitsPerEm = ((PDCIDFontType2) t0font.getDescendantFont()).getTrueTypeFont().getHeader().getUnitsPerEm();
-                    at.scale(1000d / unitsPerEm, 1000d / unitsPerEm);
-                }
-            }
-        }
-        else if (font instanceof PDSimpleFont)
-        {
-            PDSimpleFont simpleFont = (PDSimpleFont) font;
-
-            // these two lines do not always work, e.g. for the TT fonts in file 032431.pdf
-            // which is why PDVectorFont is tried first.
-            String name = simpleFont.getEncoding().getName(code);
-            path = simpleFont.getPath(name);
-        }
-        else
-        {
-            // shouldn't happen, please open issue in JIRA
-            System.out.println("Unknown font class: " + font.getClass());
-        }
-        if (path == null)
-        {
-            return null;
-        }
-        return at.createTransformedShape(path.getBounds2D());
-    }
-
     //
     // Bitmaps
     //
@@ -245,50 +242,86 @@ public class FreeSpaceFinder extends PDFGraphicsStreamEngine {
     //
     // helpers
     //
+    /**
+     * Removes the given used space from the free spaces. Only the free spaces
+     * overlapping the used space are looked at, they are retrieved from the
+     * grid index. In bulk mode the used space is merely recorded.
+     */
     void remove(Rectangle2D usedSpace)
     {
+        if (bulkMode)
+        {
+            pendingUsedSpaces.add(usedSpace);
+            return;
+        }
+        // closed bounds test; Rectangle2D.intersects ignores zero width or height rules
+        if (searchRegion != null && (usedSpace.getMaxX() < searchRegion.getMinX() || usedSpace.getMinX() > searchRegion.getMaxX() ||
+                usedSpace.getMaxY() < searchRegion.getMinY() || usedSpace.getMinY() > searchRegion.getMaxY()))
+            return;
+
         final double minX = usedSpace.getMinX();
         final double maxX = usedSpace.getMaxX();
         final double minY = usedSpace.getMinY();
         final double maxY = usedSpace.getMaxY();
 
-        final Collection<Rectangle2D> newFreeSpaces = new ArrayList<Rectangle2D>();
+        final Collection<Rectangle2D> newFragments = new ArrayList<Rectangle2D>();
 
-        for (Rectangle2D freeSpace: freeSpaces)
+        for (Rectangle2D freeSpace: freeSpaces.query(usedSpace))
         {
-            final Collection<Rectangle2D> newFragments = new ArrayList<Rectangle2D>();
+            boolean isFragmented = false;
             if (freeSpace.intersectsLine(minX, minY, maxX, minY))
-                newFragments.add(new Rectangle2D.Double(freeSpace.getMinX(), freeSpace.getMinY(), freeSpace.getWidth(), minY-freeSpace.getMinY()));
+            {
+                addIfLargeEnough(newFragments, new Rectangle2D.Double(freeSpace.getMinX(), freeSpace.getMinY(), freeSpace.getWidth(), minY-freeSpace.getMinY()));
+                isFragmented = true;
+            }
             if (freeSpace.intersectsLine(minX, maxY, maxX, maxY))
-                newFragments.add(new Rectangle2D.Double(freeSpace.getMinX(), maxY, freeSpace.getWidth(), freeSpace.getMaxY() - maxY));
+            {
+                addIfLargeEnough(newFragments, new Rectangle2D.Double(freeSpace.getMinX(), maxY, freeSpace.getWidth(), freeSpace.getMaxY() - maxY));
+                isFragmented = true;
+            }
             if (freeSpace.intersectsLine(minX, minY, minX, maxY))
-                newFragments.add(new Rectangle2D.Double(freeSpace.getMinX(), freeSpace.getMinY(), minX - freeSpace.getMinX(), freeSpace.getHeight()));
+            {
+                addIfLargeEnough(newFragments, new Rectangle2D.Double(freeSpace.getMinX(), freeSpace.getMinY(), minX - freeSpace.getMinX(), freeSpace.getHeight()));
+                isFragmented = true;
+            }
             if (freeSpace.intersectsLine(maxX, minY, maxX, maxY))
-                newFragments.add(new Rectangle2D.Double(maxX, freeSpace.getMinY(), freeSpace.getMaxX() - maxX, freeSpace.getHeight()));
-            if (newFragments.isEmpty())
             {
-                add(newFreeSpaces, freeSpace);
+                addIfLargeEnough(newFragments, new Rectangle2D.Double(maxX, freeSpace.getMinY(), freeSpace.getMaxX() - maxX, freeSpace.getHeight()));
+                isFragmented = true;
             }
-            else
+            if (isFragmented)
             {
-                for (Rectangle2D fragment: newFragments)
-                {
-                    if (fragment.getHeight() >= minHeight && fragment.getWidth() >= minWidth)
-                    {
-                        add(newFreeSpaces, fragment);
-                    }
-                }
+                freeSpaces.remove(freeSpace);
             }
         }
 
-        freeSpaces = newFreeSpaces;
+        for (Rectangle2D fragment: newFragments)
+        {
+            add(fragment);
+        }
+
+        if (searchRegion != null && freeSpaces.size() == 0)
+            throw new NoFitException();
     }
 
-    void add(Collection<Rectangle2D> rectangles, Rectangle2D addition)
+    void addIfLargeEnough(Collection<Rectangle2D> fragments, Rectangle2D fragment)
+    {
+        if (fragment.getHeight() >= minHeight && fragment.getWidth() >= minWidth)
+        {
+            fragments.add(fragment);
+        }
+    }
+
+    /**
+     * Adds the given free space unless it is contained in a known free space,
+     * and removes known free spaces contained in it. Only the known free spaces
+     * overlapping the addition have to be considered.
+     */
+    void add(Rectangle2D addition)
     {
         final Collection<Rectangle2D> toRemove = new ArrayList<Rectangle2D>();
         boolean isContained = false;
-        for (Rectangle2D rectangle: rectangles)
+        for (Rectangle2D rectangle: freeSpaces.query(addition))
         {
             if (rectangle.contains(addition))
             {
@@ -298,16 +331,52 @@ public class FreeSpaceFinder extends PDFGraphicsStreamEngine {
             if (addition.contains(rectangle))
                 toRemove.add(rectangle);
         }
-        rectangles.removeAll(toRemove);
+        for (Rectangle2D rectangle: toRemove)
+            freeSpaces.remove(rectangle);
         if (!isContained)
-            rectangles.add(addition);
+            freeSpaces.add(addition);
+    }
+
+    /**
+     * Applies the used spaces recorded in bulk mode in a single pass along
+     * the x axis. Used spaces contained in their predecessor in that order,
+     * e.g. duplicates, cannot change the free spaces and are skipped.
+     */
+    void flushUsedSpaces()
+    {
+        if (pendingUsedSpaces.isEmpty())
+            return;
+
+        List<Rectangle2D> usedSpaces = pendingUsedSpaces;
+        pendingUsedSpaces = new ArrayList<Rectangle2D>();
+        usedSpaces.sort(Comparator.comparingDouble(Rectangle2D::getMinX).thenComparingDouble(Rectangle2D::getMinY));
+
+        boolean wasBulkMode = bulkMode;
+        bulkMode = false;
+        Rectangle2D previous = null;
+        for (Rectangle2D usedSpace : usedSpaces)
+        {
+            if (previous != null && previous.contains(usedSpace))
+                continue;
+            remove(usedSpace);
+            previous = usedSpace;
+        }
+        bulkMode = wasBulkMode;
     }
 
     //
     // hidden members
     //
     Path2D currentPath = new Path2D.Float();
-    Collection<Rectangle2D> freeSpaces = null;
+    final RectangleGrid freeSpaces;
     final float minWidth;
     final float minHeight;
+    boolean bulkMode = false;
+    Rectangle2D searchRegion = null;
+    List<Rectangle2D> pendingUsedSpaces = new ArrayList<Rectangle2D>();
+
+    /**
+     * Number of grid index columns and rows for the free spaces.
+     */
+    final static int GRID_SIZE = 16;
 }
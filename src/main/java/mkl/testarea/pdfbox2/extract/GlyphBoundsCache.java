@@ -0,0 +1,192 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.fontbox.util.BoundingBox;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDCIDFontType2;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDSimpleFont;
+import org.apache.pdfbox.pdmodel.font.PDTrueTypeFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType3CharProc;
+import org.apache.pdfbox.pdmodel.font.PDType3Font;
+import org.apache.pdfbox.pdmodel.font.PDVectorFont;
+import org.apache.pdfbox.util.Matrix;
+
+/**
+ * <p>
+ * This class calculates glyph bounding boxes like
+ * <code>org.apache.pdfbox.examples.util.DrawPrintTextLocations.calculateGlyphBounds(Matrix, PDFont, int)</code>
+ * but caches the glyph space bounds per font and character code, so the glyph
+ * path has to be retrieved only once per glyph. For each call only the cached
+ * rectangle is transformed by the text rendering matrix.
+ * </p>
+ * <p>
+ * Fonts are weakly referenced, so the cache entries of a font vanish together
+ * with the font; furthermore, the number of glyphs cached per font is limited
+ * and the least recently used glyphs are evicted first. Instances are thread
+ * safe; usually the {@link #DEFAULT} instance is shared by all users, e.g.
+ * {@link BoundingBoxFinder}, {@link FreeSpaceFinder}, and
+ * {@link mkl.testarea.pdfbox2.merge.PageVerticalAnalyzer}.
+ * </p>
+ *
+ * @author mkl
+ */
+public class GlyphBoundsCache {
+    public static final GlyphBoundsCache DEFAULT = new GlyphBoundsCache(4096);
+
+    public GlyphBoundsCache(int maxGlyphsPerFont) {
+        this.maxGlyphsPerFont = maxGlyphsPerFont;
+    }
+
+    /**
+     * Returns the bounding box of the glyph for the given code of the given font
+     * drawn with the given text rendering matrix, or <code>null</code> if the
+     * glyph bounds cannot be determined.
+     */
+    public Rectangle2D getBounds(Matrix textRenderingMatrix, PDFont font, int code) throws IOException {
+        FontEntry fontEntry;
+        synchronized (fonts) {
+            fontEntry = fonts.get(font);
+            if (fontEntry == null) {
+                fontEntry = new FontEntry(font, maxGlyphsPerFont);
+                fonts.put(font, fontEntry);
+            }
+        }
+
+        Rectangle2D glyphBounds;
+        synchronized (fontEntry) {
+            glyphBounds = fontEntry.glyphs.get(code);
+            if (glyphBounds == null) {
+                glyphBounds = calculateGlyphSpaceBounds(font, code);
+                fontEntry.glyphs.put(code, glyphBounds);
+            }
+        }
+        if (glyphBounds == NO_BOUNDS)
+            return null;
+
+        AffineTransform at = textRenderingMatrix.createAffineTransform();
+        at.concatenate(fontEntry.glyphSpaceTransform);
+        double minX = glyphBounds.getMinX(), minY = glyphBounds.getMinY();
+        double maxX = glyphBounds.getMaxX(), maxY = glyphBounds.getMaxY();
+        double[] corners = { minX, minY, maxX, minY, maxX, maxY, minX, maxY };
+        at.transform(corners, 0, corners, 0, 4);
+        double x0 = corners[0], x1 = corners[0], y0 = corners[1], y1 = corners[1];
+        for (int i = 2; i < 8; i += 2) {
+            x0 = Math.min(x0, corners[i]);
+            x1 = Math.max(x1, corners[i]);
+            y0 = Math.min(y0, corners[i + 1]);
+            y1 = Math.max(y1, corners[i + 1]);
+        }
+        return new Rectangle2D.Double(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /**
+     * Copy of the glyph path retrieval of
+     * <code>org.apache.pdfbox.examples.util.DrawPrintTextLocations.calculateGlyphBounds(Matrix, PDFont, int)</code>,
+     * only the bounds of the path are returned.
+     */
+    static Rectangle2D calculateGlyphSpaceBounds(PDFont font, int code) throws IOException
+    {
+        GeneralPath path = null;
+        if (font instanceof PDType3Font)
+        {
+            // It is difficult to calculate the real individual glyph bounds for type 3 fonts
+            // because these are not vector fonts, the content stream could contain almost anything
+            // that is found in page content streams.
+            PDType3Font t3Font = (PDType3Font) font;
+            PDType3CharProc charProc = t3Font.getCharProc(code);
+            if (charProc != null)
+            {
+                BoundingBox fontBBox = t3Font.getBoundingBox();
+                PDRectangle glyphBBox = charProc.getGlyphBBox();
+                if (glyphBBox != null)
+                {
+                    // PDFBOX-3850: glyph bbox could be larger than the font bbox
+                    glyphBBox.setLowerLeftX(Math.max(fontBBox.getLowerLeftX(), glyphBBox.getLowerLeftX()));
+                    glyphBBox.setLowerLeftY(Math.max(fontBBox.getLowerLeftY(), glyphBBox.getLowerLeftY()));
+                    glyphBBox.setUpperRightX(Math.min(fontBBox.getUpperRightX(), glyphBBox.getUpperRightX()));
+                    glyphBBox.setUpperRightY(Math.min(fontBBox.getUpperRightY(), glyphBBox.getUpperRightY()));
+                    path = glyphBBox.toGeneralPath();
+                }
+            }
+        }
+        else if (font instanceof PDVectorFont)
+        {
+            PDVectorFont vectorFont = (PDVectorFont) font;
+            path = vectorFont.getPath(code);
+        }
+        else if (font instanceof PDSimpleFont)
+        {
+            PDSimpleFont simpleFont = (PDSimpleFont) font;
+
+            // these two lines do not always work, e.g. for the TT fonts in file 032431.pdf
+            // which is why PDVectorFont is tried first.
+            String name = simpleFont.getEncoding().getName(code);
+            path = simpleFont.getPath(name);
+        }
+        else
+        {
+            // shouldn't happen, please open issue in JIRA
+            System.out.println("Unknown font class: " + font.getClass());
+        }
+        return path == null ? NO_BOUNDS : path.getBounds2D();
+    }
+
+    /**
+     * Transformation from glyph space to text space, i.e. the font matrix,
+     * for TrueType based fonts scaled to a units per em value of 1000.
+     */
+    static AffineTransform calculateGlyphSpaceTransform(PDFont font) throws IOException
+    {
+        AffineTransform at = font.getFontMatrix().createAffineTransform();
+        if (font instanceof PDVectorFont && !(font instanceof PDType3Font))
+        {
+            if (font instanceof PDTrueTypeFont)
+            {
+                PDTrueTypeFont ttFont = (PDTrueTypeFont) font;
+                int unitsPerEm = ttFont.getTrueTypeFont().getHeader().getUnitsPerEm();
+                at.scale(1000d / unitsPerEm, 1000d / unitsPerEm);
+            }
+            if (font instanceof PDType0Font)
+            {
+                PDType0Font t0font = (PDType0Font) font;
+                if (t0font.getDescendantFont() instanceof PDCIDFontType2)
+                {
+                    int unitsPerEm = ((PDCIDFontType2) t0font.getDescendantFont()).getTrueTypeFont().getHeader().getUnitsPerEm();
+                    at.scale(1000d / unitsPerEm, 1000d / unitsPerEm);
+                }
+            }
+        }
+        return at;
+    }
+
+    static class FontEntry {
+        FontEntry(PDFont font, int maxGlyphs) throws IOException {
+            glyphSpaceTransform = calculateGlyphSpaceTransform(font);
+            glyphs = new LinkedHashMap<Integer, Rectangle2D>(64, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Rectangle2D> eldest) {
+                    return size() > maxGlyphs;
+                }
+            };
+        }
+
+        final AffineTransform glyphSpaceTransform;
+        final Map<Integer, Rectangle2D> glyphs;
+    }
+
+    static final Rectangle2D NO_BOUNDS = new Rectangle2D.Double();
+
+    final Map<PDFont, FontEntry> fonts = new WeakHashMap<>();
+    final int maxGlyphsPerFont;
+}
@@ -0,0 +1,37 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * A receiver of the glyphs extracted by {@link PDFFilteringTextStripper} as
+ * primitive columns instead of text.
+ * </p>
+ * <p>
+ * A glyph run is given by parallel arrays indexed by glyph: x, y, width, and
+ * height (direction adjusted, as in the text extraction API, with y being the
+ * base line), font id, and the start offset of its code points in the code
+ * point array; <code>codePointStarts[count]</code> is the end of the code
+ * points of the last glyph. The arrays are reused by the caller, so their
+ * content must be copied if needed beyond the call, and they may be longer
+ * than the run.
+ * </p>
+ *
+ * @author mkl
+ */
+public interface GlyphRunSink {
+    /**
+     * Called once per font before the first run using its id.
+     */
+    public default void font(int fontId, String fontName) throws IOException {
+    }
+
+    public default void startPage(int pageNumber) throws IOException {
+    }
+
+    public void glyphRun(int count, int[] codePoints, int[] codePointStarts, float[] x, float[] y,
+            float[] widths, float[] heights, int[] fontIds) throws IOException;
+
+    public default void endPage(int pageNumber) throws IOException {
+    }
+}
@@ -0,0 +1,316 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+import org.apache.pdfbox.util.Matrix;
+
+/**
+ * <a href="https://stackoverflow.com/questions/62792228/search-texts-and-get-position-in-pdf-with-java">
+ * Search texts and get position in pdf with java
+ * </a>
+ * <p>
+ * This class searches for many terms at once in {@link TextPositionSequence}
+ * instances. The terms are compiled into an Aho-Corasick automaton, so a
+ * single pass over the characters finds all occurrences of all terms,
+ * overlapping ones included, independent of the number of terms.
+ * </p>
+ * <p>
+ * The automaton is stored in primitive arrays: the trie edges are kept in an
+ * open addressing hash table keyed by node and character, and each node has
+ * a failure link, the index of the term ending there (if any), and a link to
+ * the next node on its failure chain at which a term ends.
+ * </p>
+ * <p>
+ * {@link #search(PDDocument)} collects the text positions of each page like
+ * the improved search in <code>SearchSubword</code>, i.e. with virtual spaces
+ * at line breaks, and searches them in a single pass per page.
+ * </p>
+ *
+ * @author mkl
+ */
+public class MultiTermSearcher
+{
+    /**
+     * A hit of a term, given by the page (1-based, if searched by
+     * {@link MultiTermSearcher#search(PDDocument)}) and the matched
+     * text positions.
+     */
+    public static class Hit
+    {
+        Hit(String term, int page, TextPositionSequence sequence)
+        {
+            this.term = term;
+            this.page = page;
+            this.sequence = sequence;
+        }
+
+        public String getTerm()
+        {
+            return term;
+        }
+
+        public int getPage()
+        {
+            return page;
+        }
+
+        public TextPositionSequence getSequence()
+        {
+            return sequence;
+        }
+
+        /**
+         * @return the union of the glyph boxes of the matched text positions in
+         * the direction adjusted coordinates of the text extraction API, i.e.
+         * with y growing downwards.
+         */
+        public Rectangle2D getBounds()
+        {
+            Rectangle2D bounds = null;
+            for (int i = 0; i < sequence.length(); i++)
+            {
+                TextPosition textPosition = sequence.textPositionAt(i);
+                Rectangle2D box = new Rectangle2D.Float(textPosition.getXDirAdj(), textPosition.getYDirAdj() - textPosition.getHeightDir(),
+                        textPosition.getWidthDirAdj(), textPosition.getHeightDir());
+                if (bounds == null)
+                    bounds = box;
+                else
+                    bounds.add(box);
+            }
+            return bounds;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("'%s' on page %d at %s", term, page, getBounds());
+        }
+
+        final String term;
+        final int page;
+        final TextPositionSequence sequence;
+    }
+
+    /**
+     * Compiles the given terms; empty and duplicate terms are ignored.
+     */
+    public MultiTermSearcher(Collection<String> terms)
+    {
+        LinkedHashSet<String> uniqueTerms = new LinkedHashSet<>(terms);
+        uniqueTerms.remove("");
+        this.terms = uniqueTerms.toArray(new String[uniqueTerms.size()]);
+
+        int maxNodes = 1;
+        for (String term : this.terms)
+            maxNodes += term.length();
+        failures = new int[maxNodes];
+        termEnds = new int[maxNodes];
+        outputLinks = new int[maxNodes];
+        firstChildren = new int[maxNodes];
+        nextSiblings = new int[maxNodes];
+        Arrays.fill(termEnds, -1);
+        Arrays.fill(firstChildren, -1);
+        int capacity = Integer.highestOneBit(Math.max(16, maxNodes * 2 - 1)) << 1;
+        edgeKeys = new long[capacity];
+        edgeTargets = new int[capacity];
+        Arrays.fill(edgeKeys, -1);
+
+        for (int termIndex = 0; termIndex < this.terms.length; termIndex++)
+        {
+            String term = this.terms[termIndex];
+            int node = 0;
+            for (int i = 0; i < term.length(); i++)
+            {
+                char c = term.charAt(i);
+                int child = child(node, c);
+                if (child < 0)
+                {
+                    child = nodeCount++;
+                    addEdge(node, c, child);
+                    nextSiblings[child] = firstChildren[node];
+                    firstChildren[node] = child;
+                }
+                node = child;
+            }
+            termEnds[node] = termIndex;
+        }
+
+        computeFailureLinks();
+    }
+
+    /**
+     * Searches all the terms in the given sequence in a single pass.
+     */
+    public List<Hit> search(TextPositionSequence sequence, int page)
+    {
+        List<Hit> hits = new ArrayList<>();
+        int state = 0;
+        for (int i = 0; i < sequence.length(); i++)
+        {
+            char c = sequence.charAt(i);
+            int next;
+            while ((next = child(state, c)) < 0 && state != 0)
+                state = failures[state];
+            state = next < 0 ? 0 : next;
+
+            for (int node = termEnds[state] >= 0 ? state : outputLinks[state]; node > 0; node = outputLinks[node])
+            {
+                String term = terms[termEnds[node]];
+                hits.add(new Hit(term, page, sequence.subSequence(i + 1 - term.length(), i + 1)));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Searches all the terms on all pages of the given document, one pass per page.
+     */
+    public List<Hit> search(PDDocument document) throws IOException
+    {
+        final List<Hit> hits = new ArrayList<>();
+        final List<TextPosition> pageTextPositions = new ArrayList<>();
+        PDFTextStripper stripper = new PDFTextStripper()
+        {
+            @Override
+            protected void startPage(PDPage page) throws IOException
+            {
+                pageTextPositions.clear();
+                super.startPage(page);
+            }
+
+            @Override
+            protected void writeString(String text, List<TextPosition> textPositions) throws IOException
+            {
+                pageTextPositions.addAll(textPositions);
+            }
+
+            @Override
+            protected void writeLineSeparator() throws IOException
+            {
+                if (!pageTextPositions.isEmpty())
+                {
+                    TextPosition last = pageTextPositions.get(pageTextPositions.size() - 1);
+                    if (!" ".equals(last.getUnicode()))
+                    {
+                        Matrix textMatrix = last.getTextMatrix().clone();
+                        textMatrix.setValue(2, 0, last.getEndX());
+                        textMatrix.setValue(2, 1, last.getEndY());
+                        TextPosition separatorSpace = new TextPosition(last.getRotation(), last.getPageWidth(), last.getPageHeight(),
+                                textMatrix, last.getEndX(), last.getEndY(), last.getHeight(), 0, last.getWidthOfSpace(), " ",
+                                new int[] {' '}, last.getFont(), last.getFontSize(), (int) last.getFontSizeInPt());
+                        pageTextPositions.add(separatorSpace);
+                    }
+                }
+            }
+
+            @Override
+            protected void endPage(PDPage page) throws IOException
+            {
+                hits.addAll(search(new TextPositionSequence(new ArrayList<>(pageTextPositions)), getCurrentPageNo()));
+                pageTextPositions.clear();
+                super.endPage(page);
+            }
+        };
+        stripper.setSortByPosition(true);
+        stripper.getText(document);
+        return hits;
+    }
+
+    //
+    // automaton construction
+    //
+    /**
+     * Determines the failure and output links in a breadth first walk of the trie.
+     */
+    void computeFailureLinks()
+    {
+        int[] queue = new int[nodeCount];
+        int head = 0, tail = 0;
+        for (int child = firstChildren[0]; child >= 0; child = nextSiblings[child])
+        {
+            failures[child] = 0;
+            outputLinks[child] = 0;
+            queue[tail++] = child;
+        }
+        while (head < tail)
+        {
+            int node = queue[head++];
+            for (int child = firstChildren[node]; child >= 0; child = nextSiblings[child])
+            {
+                char c = nodeChars[child];
+                int failure = failures[node];
+                int target;
+                while ((target = child(failure, c)) < 0 && failure != 0)
+                    failure = failures[failure];
+                failures[child] = target < 0 ? 0 : target;
+                int failureNode = failures[child];
+                outputLinks[child] = termEnds[failureNode] >= 0 ? failureNode : outputLinks[failureNode];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    void addEdge(int node, char c, int child)
+    {
+        if (nodeChars.length <= child)
+            nodeChars = Arrays.copyOf(nodeChars, Math.max(failures.length, 16));
+        nodeChars[child] = c;
+        long key = edgeKey(node, c);
+        int mask = edgeKeys.length - 1;
+        int index = hash(key) & mask;
+        while (edgeKeys[index] != -1)
+            index = (index + 1) & mask;
+        edgeKeys[index] = key;
+        edgeTargets[index] = child;
+    }
+
+    /**
+     * @return the child of the given node for the given character or -1 if there is none.
+     */
+    int child(int node, char c)
+    {
+        long key = edgeKey(node, c);
+        int mask = edgeKeys.length - 1;
+        int index = hash(key) & mask;
+        long candidate;
+        while ((candidate = edgeKeys[index]) != -1)
+        {
+            if (candidate == key)
+                return edgeTargets[index];
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    static long edgeKey(int node, char c)
+    {
+        return ((long) node << 16) | c;
+    }
+
+    static int hash(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    final String[] terms;
+    int nodeCount = 1;
+    final int[] failures;
+    final int[] termEnds;
+    final int[] outputLinks;
+    final int[] firstChildren;
+    final int[] nextSiblings;
+    char[] nodeChars = new char[0];
+    final long[] edgeKeys;
+    final int[] edgeTargets;
+}
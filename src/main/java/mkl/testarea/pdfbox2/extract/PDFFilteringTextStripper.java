@@ -1,7 +1,19 @@
 package mkl.testarea.pdfbox2.extract;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.pdfbox.text.TextPosition;
@@ -14,12 +26,26 @@ import org.apache.pdfbox.text.TextPosition;
  * This class extends the <code>PDFTextStripper</code> by an option to
  * filter individual <code>TextPosition</code> instances.
  * </p>
- * 
+ * <p>
+ * Furthermore, a {@link GlyphRunSink} can be set to receive the accepted
+ * glyphs as primitive columns, e.g. for indexing without a text round trip.
+ * The column buffers are reused across runs. If the sink is to be the only
+ * output, {@link #setWriteText(boolean)} allows to skip writing the text.
+ * </p>
+ *
  * @author mkl
  */
 public class PDFFilteringTextStripper extends PDFTextStripper {
     public interface TextStripperFilter {
         public boolean accept(TextPosition text, PDGraphicsState graphicsState);
+
+        /**
+         * Called before and after each operator not showing text, i.e. whenever the
+         * graphics state may have changed; filters caching decisions depending on the
+         * graphics state only have to drop them here.
+         */
+        public default void graphicsStateChanged() {
+        }
     }
 
     public PDFFilteringTextStripper(TextStripperFilter filter) throws IOException {
@@ -39,6 +65,26 @@ public class PDFFilteringTextStripper extends PDFTextStripper {
         this.filter = filter;
     }
 
+    public GlyphRunSink getGlyphRunSink() {
+        return glyphRunSink;
+    }
+
+    public void setGlyphRunSink(GlyphRunSink glyphRunSink) {
+        this.glyphRunSink = glyphRunSink;
+    }
+
+    public boolean isWriteText() {
+        return writeText;
+    }
+
+    /**
+     * Whether the text is written to the output; by default it is. If not,
+     * nothing at all is written, neither the text nor any separators.
+     */
+    public void setWriteText(boolean writeText) {
+        this.writeText = writeText;
+    }
+
     @Override
     protected void processTextPosition(TextPosition text) {
         PDGraphicsState graphicsState = getGraphicsState();
@@ -46,5 +92,181 @@ public class PDFFilteringTextStripper extends PDFTextStripper {
             super.processTextPosition(text);
     }
 
+    @Override
+    protected void processOperator(Operator operator, List<COSBase> operands) throws IOException {
+        boolean showsText = TEXT_SHOWING_OPERATORS.contains(operator.getName());
+        if (!showsText)
+            filter.graphicsStateChanged();
+        super.processOperator(operator, operands);
+        if (!showsText)
+            filter.graphicsStateChanged();
+    }
+
+    //
+    // PDFTextStripper overrides for the glyph run sink
+    //
+    @Override
+    protected void startDocument(PDDocument document) throws IOException {
+        fontIds.clear();
+        lastFont = null;
+        lastFontId = -1;
+        super.startDocument(document);
+    }
+
+    @Override
+    protected void startPage(PDPage page) throws IOException {
+        if (glyphRunSink != null)
+            glyphRunSink.startPage(getCurrentPageNo());
+        super.startPage(page);
+    }
+
+    @Override
+    protected void endPage(PDPage page) throws IOException {
+        super.endPage(page);
+        if (glyphRunSink != null)
+            glyphRunSink.endPage(getCurrentPageNo());
+    }
+
+    @Override
+    protected void writeString(String text, List<TextPosition> textPositions) throws IOException {
+        if (glyphRunSink != null)
+            writeGlyphRun(textPositions);
+        if (writeText)
+            super.writeString(text, textPositions);
+    }
+
+    @Override
+    protected void writeString(String text) throws IOException {
+        if (writeText)
+            super.writeString(text);
+    }
+
+    @Override
+    protected void writeLineSeparator() throws IOException {
+        if (writeText)
+            super.writeLineSeparator();
+    }
+
+    @Override
+    protected void writeWordSeparator() throws IOException {
+        if (writeText)
+            super.writeWordSeparator();
+    }
+
+    @Override
+    protected void writeCharacters(TextPosition text) throws IOException {
+        if (writeText)
+            super.writeCharacters(text);
+    }
+
+    @Override
+    protected void writePageStart() throws IOException {
+        if (writeText)
+            super.writePageStart();
+    }
+
+    @Override
+    protected void writePageEnd() throws IOException {
+        if (writeText)
+            super.writePageEnd();
+    }
+
+    @Override
+    protected void writeParagraphStart() throws IOException {
+        if (writeText)
+            super.writeParagraphStart();
+    }
+
+    @Override
+    protected void writeParagraphEnd() throws IOException {
+        if (writeText)
+            super.writeParagraphEnd();
+    }
+
+    @Override
+    protected void startArticle(boolean isLTR) throws IOException {
+        if (writeText)
+            super.startArticle(isLTR);
+    }
+
+    @Override
+    protected void endArticle() throws IOException {
+        if (writeText)
+            super.endArticle();
+    }
+
+    //
+    // helpers
+    //
+    void writeGlyphRun(List<TextPosition> textPositions) throws IOException {
+        int count = textPositions.size();
+        if (count == 0)
+            return;
+        if (x.length < count) {
+            int capacity = Math.max(count, 2 * x.length);
+            x = new float[capacity];
+            y = new float[capacity];
+            widths = new float[capacity];
+            heights = new float[capacity];
+            runFontIds = new int[capacity];
+            codePointStarts = new int[capacity + 1];
+        }
+
+        int codePointCount = 0;
+        for (int i = 0; i < count; i++) {
+            TextPosition textPosition = textPositions.get(i);
+            x[i] = textPosition.getXDirAdj();
+            y[i] = textPosition.getYDirAdj();
+            widths[i] = textPosition.getWidthDirAdj();
+            heights[i] = textPosition.getHeightDir();
+            runFontIds[i] = fontId(textPosition.getFont());
+            codePointStarts[i] = codePointCount;
+
+            String unicode = textPosition.getUnicode();
+            if (unicode == null)
+                continue;
+            for (int offset = 0; offset < unicode.length(); ) {
+                int codePoint = unicode.codePointAt(offset);
+                if (codePointCount == codePoints.length)
+                    codePoints = Arrays.copyOf(codePoints, Math.max(16, 2 * codePoints.length));
+                codePoints[codePointCount++] = codePoint;
+                offset += Character.charCount(codePoint);
+            }
+        }
+        codePointStarts[count] = codePointCount;
+
+        glyphRunSink.glyphRun(count, codePoints, codePointStarts, x, y, widths, heights, runFontIds);
+    }
+
+    int fontId(PDFont font) throws IOException {
+        if (font == lastFont && lastFontId >= 0)
+            return lastFontId;
+        Integer id = fontIds.get(font);
+        if (id == null) {
+            id = fontIds.size();
+            fontIds.put(font, id);
+            glyphRunSink.font(id, font != null ? font.getName() : null);
+        }
+        lastFont = font;
+        lastFontId = id;
+        return id;
+    }
+
+    final static Set<String> TEXT_SHOWING_OPERATORS = new HashSet<>(Arrays.asList(
+            OperatorName.SHOW_TEXT, OperatorName.SHOW_TEXT_ADJUSTED, OperatorName.SHOW_TEXT_LINE, OperatorName.SHOW_TEXT_LINE_AND_SPACE));
+
     final TextStripperFilter filter;
+    GlyphRunSink glyphRunSink = null;
+    boolean writeText = true;
+
+    final Map<PDFont, Integer> fontIds = new IdentityHashMap<>();
+    PDFont lastFont = null;
+    int lastFontId = -1;
+    int[] codePoints = new int[0];
+    int[] codePointStarts = new int[1];
+    float[] x = new float[0];
+    float[] y = new float[0];
+    float[] widths = new float[0];
+    float[] heights = new float[0];
+    int[] runFontIds = new int[0];
 }
@@ -2,8 +2,10 @@ package mkl.testarea.pdfbox2.extract;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
@@ -22,6 +24,11 @@ import org.apache.pdfbox.text.TextPosition;
  * of semantic text sections which are recognizable by their characteristics of each line
  * alone, e.g. the sample document supplied by the OP.
  * </p>
+ * <p>
+ * Given a section consumer, the stripper delivers each section as soon as it
+ * closes instead of collecting all of them, keeping memory usage bounded for
+ * large documents.
+ * </p>
  * 
  * @author mkl
  */
@@ -31,17 +38,34 @@ public class PDFTextSectionStripper extends PDFTextStripper
     // constructor
     //
     public PDFTextSectionStripper(List<TextSectionDefinition> sectionDefinitions) throws IOException
+    {
+        this(sectionDefinitions, null);
+    }
+
+    /**
+     * In this streaming mode each text section is forwarded to the given consumer as soon
+     * as it is closed, and it is not kept for {@link #getSections()}.
+     */
+    public PDFTextSectionStripper(List<TextSectionDefinition> sectionDefinitions, Consumer<TextSection> sectionConsumer) throws IOException
     {
         super();
         
         this.sectionDefinitions = sectionDefinitions;
+        this.sectionConsumer = sectionConsumer != null ? sectionConsumer : sections::add;
+
+        int size = sectionDefinitions.size();
+        this.nextDefinition = new int[size];
+        for (int i = 0; i < size; i++)
+            nextDefinition[i] = sectionDefinitions.get(i).multiple ? i : i + 1;
+        this.lineMatches = new byte[size];
     }
 
     //
     // Section retrieval
     //
     /**
-     * @return an unmodifiable list of text sections recognized during {@link #getText(PDDocument)}.
+     * @return an unmodifiable list of text sections recognized during {@link #getText(PDDocument)};
+     * empty if a section consumer has been given.
      */
     public List<TextSection> getSections()
     {
@@ -51,6 +75,18 @@ public class PDFTextSectionStripper extends PDFTextStripper
     //
     // PDFTextStripper overrides
     //
+    /**
+     * <p>
+     * The section definitions are compiled into a simple state machine: the state is
+     * the index of the current definition, {@link #nextDefinition} holds the state to
+     * continue from after a section of the definition at that index closes, and the
+     * predicate results are cached per line, so no predicate is tested twice for the
+     * same line.
+     * </p>
+     * <p>
+     * Lines are handed over to the sections instead of being copied.
+     * </p>
+     */
     @Override
     protected void writeLineSeparator() throws IOException
     {
@@ -58,79 +94,60 @@ public class PDFTextSectionStripper extends PDFTextStripper
 
         if (!currentLine.isEmpty())
         {
+            Arrays.fill(lineMatches, UNKNOWN);
             boolean matched = false;
+            boolean lineUsed = false;
             if (!(currentHeader.isEmpty() && currentBody.isEmpty()))
             {
                 TextSectionDefinition definition = sectionDefinitions.get(currentSectionDefinition);
                 switch (definition.multiLine)
                 {
                 case multiLine:
-                    if (definition.matchPredicate.test(currentLine))
-                    {
-                        currentBody.add(new ArrayList<>(currentLine));
-                        matched = true;
-                    }
+                    matched = matches(currentSectionDefinition);
                     break;
                 case multiLineHeader:
                 case multiLineIntro:
-                    boolean followUpMatch = false;
-                    for (int i = definition.multiple ? currentSectionDefinition : currentSectionDefinition + 1;
-                            i < sectionDefinitions.size(); i++)
-                    {
-                        TextSectionDefinition followUpDefinition = sectionDefinitions.get(i);
-                        if (followUpDefinition.matchPredicate.test(currentLine))
-                        {
-                            followUpMatch = true;
-                            break;
-                        }
-                    }
-                    if (!followUpMatch)
-                    {
-                        currentBody.add(new ArrayList<>(currentLine));
-                        matched = true;
-                    }
+                    matched = firstMatch(nextDefinition[currentSectionDefinition]) == sectionDefinitions.size();
                     break;
                 case singleLine:
                     System.out.println("Internal error: There can be no current header or body as long as the current definition is single line only");
                 }
 
-                if (!matched)
+                if (matched)
+                {
+                    currentBody.add(currentLine);
+                    lineUsed = true;
+                }
+                else
                 {
-                    sections.add(new TextSection(definition, currentHeader, currentBody));
-                    currentHeader.clear();
-                    currentBody.clear();
-                    if (!definition.multiple)
-                        currentSectionDefinition++;
+                    closeSection(definition);
+                    currentSectionDefinition = nextDefinition[currentSectionDefinition];
                 }
             }
 
             if (!matched)
             {
-                while (currentSectionDefinition < sectionDefinitions.size())
+                currentSectionDefinition = firstMatch(currentSectionDefinition);
+                if (currentSectionDefinition < sectionDefinitions.size())
                 {
                     TextSectionDefinition definition = sectionDefinitions.get(currentSectionDefinition);
-                    if (definition.matchPredicate.test(currentLine))
+                    matched = true;
+                    lineUsed = true;
+                    switch (definition.multiLine)
                     {
-                        matched = true;
-                        switch (definition.multiLine)
-                        {
-                        case singleLine:
-                            sections.add(new TextSection(definition, currentLine, Collections.emptyList()));
-                            if (!definition.multiple)
-                                currentSectionDefinition++;
-                            break;
-                        case multiLineHeader:
-                            currentHeader.addAll(new ArrayList<>(currentLine));
-                            break;
-                        case multiLine:
-                        case multiLineIntro:
-                            currentBody.add(new ArrayList<>(currentLine));
-                            break;
-                        }
+                    case singleLine:
+                        sectionConsumer.accept(TextSection.adopt(definition, currentLine, Collections.emptyList()));
+                        currentSectionDefinition = nextDefinition[currentSectionDefinition];
+                        break;
+                    case multiLineHeader:
+                        currentHeader.addAll(currentLine);
+                        lineUsed = false;
+                        break;
+                    case multiLine:
+                    case multiLineIntro:
+                        currentBody.add(currentLine);
                         break;
                     }
-
-                    currentSectionDefinition++;
                 }
             }
 
@@ -138,6 +155,12 @@ public class PDFTextSectionStripper extends PDFTextStripper
             {
                 System.out.println("Could not match line.");
             }
+
+            if (lineUsed)
+            {
+                currentLine = new ArrayList<>();
+                return;
+            }
         }
         currentLine.clear();
     }
@@ -149,10 +172,7 @@ public class PDFTextSectionStripper extends PDFTextStripper
 
         if (!(currentHeader.isEmpty() && currentBody.isEmpty()))
         {
-            TextSectionDefinition definition = sectionDefinitions.get(currentSectionDefinition);
-            sections.add(new TextSection(definition, currentHeader, currentBody));
-            currentHeader.clear();
-            currentBody.clear();
+            closeSection(sectionDefinitions.get(currentSectionDefinition));
         }
     }
 
@@ -163,16 +183,62 @@ public class PDFTextSectionStripper extends PDFTextStripper
 
         currentLine.add(textPositions);
     }
-    
+
+    //
+    // helpers
+    //
+    /**
+     * Forwards the current header and body as section of the given definition
+     * and starts new ones.
+     */
+    void closeSection(TextSectionDefinition definition)
+    {
+        sectionConsumer.accept(TextSection.adopt(definition, currentHeader, currentBody));
+        currentHeader = new ArrayList<>();
+        currentBody = new ArrayList<>();
+    }
+
+    /**
+     * @return the index of the first definition from the given index on matching the
+     * current line, or the number of definitions if there is none.
+     */
+    int firstMatch(int from)
+    {
+        for (int i = from; i < sectionDefinitions.size(); i++)
+        {
+            if (matches(i))
+                return i;
+        }
+        return sectionDefinitions.size();
+    }
+
+    /**
+     * @return whether the definition at the given index matches the current line; the
+     * result is cached for the line.
+     */
+    boolean matches(int index)
+    {
+        if (lineMatches[index] == UNKNOWN)
+            lineMatches[index] = sectionDefinitions.get(index).matchPredicate.test(currentLine) ? MATCH : NO_MATCH;
+        return lineMatches[index] == MATCH;
+    }
+
     //
     // member variables
     //
+    final static byte UNKNOWN = 0;
+    final static byte MATCH = 1;
+    final static byte NO_MATCH = 2;
+
     final List<TextSectionDefinition> sectionDefinitions;
+    final Consumer<TextSection> sectionConsumer;
+    final int[] nextDefinition;
+    final byte[] lineMatches;
 
     int currentSectionDefinition = 0;
     final List<TextSection> sections = new ArrayList<>();
-    final List<List<TextPosition>> currentLine = new ArrayList<>();
+    List<List<TextPosition>> currentLine = new ArrayList<>();
 
-    final List<List<TextPosition>> currentHeader = new ArrayList<>();
-    final List<List<List<TextPosition>>> currentBody = new ArrayList<>();
+    List<List<TextPosition>> currentHeader = new ArrayList<>();
+    List<List<List<TextPosition>>> currentBody = new ArrayList<>();
 }
@@ -3,10 +3,14 @@ package mkl.testarea.pdfbox2.extract;
 import java.awt.geom.Area;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.pdfbox.contentstream.operator.MissingOperandException;
 import org.apache.pdfbox.contentstream.operator.Operator;
@@ -39,6 +43,14 @@ import org.apache.pdfbox.util.Vector;
  * instructions but the {@link PageDrawer} does. So we borrow code from there
  * to implement path related behavior here.
  * </p>
+ * <p>
+ * Clip checks are cached per clip state and use a grid classification of the
+ * clip area, cf. {@link AreaIndex}; the characters are registered in a grid
+ * so that filled paths only need to check the characters near them, and
+ * rectangles drawn by <code>re</code> are checked arithmetically. Clip paths
+ * built only from axis aligned rectangles are not turned into an {@link Area}
+ * at all, cf. {@link ClipRectangleTracker}.
+ * </p>
  * 
  * @author mkl
  */
@@ -96,9 +108,27 @@ public class PDFVisibleTextStripper extends PDFTextStripper {
         lowerLeftX = pageSize.getLowerLeftX();
         lowerLeftY = pageSize.getLowerLeftY();
 
+        clipIndexes.clear();
+        glyphPoints = new UniformGrid<>(new Rectangle2D.Float(lowerLeftX, lowerLeftY, pageSize.getWidth(), pageSize.getHeight()), GRID_SIZE, GRID_SIZE);
+        covered.clear();
+
         super.processPage(page);
     }
 
+    /**
+     * Removes the characters covered by filled paths before the page is written.
+     */
+    @Override
+    protected void writePage() throws IOException {
+        if (!covered.isEmpty()) {
+            for (List<TextPosition> list : charactersByArticle) {
+                list.removeIf(covered::contains);
+            }
+            covered.clear();
+        }
+        super.writePage();
+    }
+
     @Override
     protected void processTextPosition(TextPosition text) {
         Matrix textMatrix = text.getTextMatrix();
@@ -106,12 +136,21 @@ public class PDFVisibleTextStripper extends PDFTextStripper {
         Vector end = new Vector(start.getX() + text.getWidth(), start.getY());
 
         PDGraphicsState gs = getGraphicsState();
-        Area area = gs.getCurrentClippingPath();
-        if (area == null ||
-                (contains(area, lowerLeftX + start.getX(), lowerLeftY + start.getY()) &&
-                        ((!checkEndPointToo) || contains(area, lowerLeftX + end.getX(), lowerLeftY + end.getY()))))
+        Rectangle2D clipRectangle = clipTracker.getClipRectangle(gs);
+        boolean visible;
+        if (clipRectangle != null) {
+            visible = contains(clipRectangle, lowerLeftX + start.getX(), lowerLeftY + start.getY()) &&
+                    ((!checkEndPointToo) || contains(clipRectangle, lowerLeftX + end.getX(), lowerLeftY + end.getY()));
+        } else {
+            Area area = gs.getCurrentClippingPath();
+            visible = area == null ||
+                    (contains(area, lowerLeftX + start.getX(), lowerLeftY + start.getY()) &&
+                            ((!checkEndPointToo) || contains(area, lowerLeftX + end.getX(), lowerLeftY + end.getY())));
+        }
+        if (visible) {
             super.processTextPosition(text);
-        else if (dropStream != null)
+            addGlyphPoints(new GlyphPoints(text, lowerLeftX + start.getX(), lowerLeftY + start.getY(), lowerLeftX + end.getX(), lowerLeftY + end.getY()));
+        } else if (dropStream != null)
             dropStream.printf("Clipped '%s' at %s,%s\n", text.getUnicode(), lowerLeftX + start.getX(), lowerLeftY + start.getY());
     }
 
@@ -126,36 +165,111 @@ public class PDFVisibleTextStripper extends PDFTextStripper {
      * To fix this, this method generates a small rectangle around the (glyph origin)
      * coordinates and checks whether this rectangle intersects the (clip path) area.
      * </p>
+     * <p>
+     * The checks are executed by an {@link AreaIndex} which is cached per clip path
+     * area instance, i.e. per clip state, for the current page.
+     * </p>
      */
     protected boolean contains(Area area, float x, float y) {
+        AreaIndex index = clipIndexes.computeIfAbsent(area, AreaIndex::new);
+        if (useFatGlyphOrigin) {
+            double length = .0002;
+            double up = 1.0001;
+            double down = .9999;
+            return index.intersects(x < 0 ? x*up : x*down, y < 0 ? y*up : y*down, Math.abs(x*length), Math.abs(y*length));
+        } else
+            return index.contains(x, y);
+    }
+
+    /**
+     * The same check as {@link #contains(Area, float, float)} for rectangular clip paths,
+     * cf. {@link ClipRectangleTracker}.
+     */
+    protected boolean contains(Rectangle2D rectangle, float x, float y) {
         if (useFatGlyphOrigin) {
             double length = .0002;
             double up = 1.0001;
             double down = .9999;
-            return area.intersects(x < 0 ? x*up : x*down, y < 0 ? y*up : y*down, Math.abs(x*length), Math.abs(y*length));
+            return rectangle.intersects(x < 0 ? x*up : x*down, y < 0 ? y*up : y*down, Math.abs(x*length), Math.abs(y*length));
         } else
-            return area.contains(x, y);
+            return rectangle.contains(x, y);
+    }
+
+    /**
+     * Returns the tracker of rectangular clip paths with its counters of
+     * arithmetic rectangle intersections and {@link Area} fallbacks.
+     */
+    public ClipRectangleTracker getClipTracker() {
+        return clipTracker;
     }
 
     private GeneralPath linePath = new GeneralPath();
 
+    /**
+     * The current path if it consists of a single axis aligned rectangle
+     * created by the <code>re</code> operator, otherwise <code>null</code>.
+     */
+    private Rectangle2D linePathRectangle = null;
+
+    private final ClipRectangleTracker clipTracker = new ClipRectangleTracker();
+    private final Map<Area, AreaIndex> clipIndexes = new IdentityHashMap<>();
+    /**
+     * The characters of the current page, each registered in the grid cells of its
+     * glyph origin and its baseline end.
+     */
+    private UniformGrid<GlyphPoints> glyphPoints = new UniformGrid<>(new Rectangle2D.Float(), GRID_SIZE, GRID_SIZE);
+    private final Set<TextPosition> covered = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Marks the characters covered by the current path for removal. Only the
+     * characters with points in grid cells overlapping the path bounds are
+     * checked, and for rectangles the check is arithmetic. The actual removal
+     * happens in a single pass before the page is written.
+     */
     void deleteCharsInPath() {
-        for (List<TextPosition> list : charactersByArticle) {
-            List<TextPosition> toRemove = new ArrayList<>();
-            for (TextPosition text : list) {
-                Matrix textMatrix = text.getTextMatrix();
-                Vector start = textMatrix.transform(new Vector(0, 0));
-                Vector end = new Vector(start.getX() + text.getWidth(), start.getY());
-                if (linePath.contains(lowerLeftX + start.getX(), lowerLeftY + start.getY()) ||
-                        (checkEndPointToo && linePath.contains(lowerLeftX + end.getX(), lowerLeftY + end.getY()))) {
-                    toRemove.add(text);
-                }
-            }
-            if (toRemove.size() != 0) {
-                System.out.println(toRemove.size());
-                list.removeAll(toRemove);
-            }
+        Rectangle2D rectangle = linePathRectangle;
+        Rectangle2D bounds = rectangle != null ? rectangle : linePath.getBounds2D();
+        // characters registered in two of the cells are passed twice but only checked once
+        glyphPoints.forEachInArea(bounds, points -> {
+            if (covered.contains(points.text))
+                return;
+            boolean isCovered = rectangle != null ?
+                    rectangle.contains(points.startX, points.startY) || (checkEndPointToo && rectangle.contains(points.endX, points.endY)) :
+                    linePath.contains(points.startX, points.startY) || (checkEndPointToo && linePath.contains(points.endX, points.endY));
+            if (isCovered)
+                covered.add(points.text);
+        });
+    }
+
+    void addGlyphPoints(GlyphPoints points) {
+        int startCell = glyphPoints.cellIndex(points.startX, points.startY);
+        int endCell = glyphPoints.cellIndex(points.endX, points.endY);
+        glyphPoints.addToCell(startCell, points);
+        if (endCell != startCell)
+            glyphPoints.addToCell(endCell, points);
+    }
+
+    final static int GRID_SIZE = 32;
+
+    void resetPath() {
+        linePath.reset();
+        linePathRectangle = null;
+    }
+
+    /**
+     * The relevant points of a character, i.e. its glyph origin and baseline end.
+     */
+    static class GlyphPoints {
+        GlyphPoints(TextPosition text, float startX, float startY, float endX, float endY) {
+            this.text = text;
+            this.startX = startX;
+            this.startY = startY;
+            this.endX = endX;
+            this.endY = endY;
         }
+
+        final TextPosition text;
+        final float startX, startY, endX, endY;
     }
 
     public final class AppendRectangleToPath extends OperatorProcessor {
@@ -184,6 +298,16 @@ public class PDFVisibleTextStripper extends PDFTextStripper {
             Point2D p2 = context.transformedPoint(x2, y2);
             Point2D p3 = context.transformedPoint(x1, y2);
 
+            float x0f = (float) p0.getX(), y0f = (float) p0.getY();
+            float x2f = (float) p2.getX(), y2f = (float) p2.getY();
+            boolean isAxisAligned =
+                    ((float) p1.getY() == y0f && (float) p1.getX() == x2f && (float) p3.getY() == y2f && (float) p3.getX() == x0f) ||
+                    ((float) p1.getX() == x0f && (float) p1.getY() == y2f && (float) p3.getX() == x2f && (float) p3.getY() == y0f);
+            if (isAxisAligned && linePath.getCurrentPoint() == null)
+                linePathRectangle = new Rectangle2D.Float(Math.min(x0f, x2f), Math.min(y0f, y2f), Math.abs(x2f - x0f), Math.abs(y2f - y0f));
+            else
+                linePathRectangle = null;
+
             // to ensure that the path is created in the right direction, we have to create
             // it by combining single lines instead of creating a simple rectangle
             linePath.moveTo((float) p0.getX(), (float) p0.getY());
@@ -205,7 +329,7 @@ public class PDFVisibleTextStripper extends PDFTextStripper {
     public final class StrokePath extends OperatorProcessor {
         @Override
         public void process(Operator operator, List<COSBase> operands) throws IOException {
-            linePath.reset();
+            resetPath();
         }
 
         @Override
@@ -219,7 +343,7 @@ public class PDFVisibleTextStripper extends PDFTextStripper {
         public void process(Operator operator, List<COSBase> operands) throws IOException {
             linePath.setWindingRule(GeneralPath.WIND_EVEN_ODD);
             deleteCharsInPath();
-            linePath.reset();
+            resetPath();
         }
 
         @Override
@@ -233,7 +357,7 @@ public class PDFVisibleTextStripper extends PDFTextStripper {
         public final void process(Operator operator, List<COSBase> operands) throws IOException {
             linePath.setWindingRule(GeneralPath.WIND_NON_ZERO);
             deleteCharsInPath();
-            linePath.reset();
+            resetPath();
         }
 
         @Override
@@ -247,7 +371,7 @@ public class PDFVisibleTextStripper extends PDFTextStripper {
         public void process(Operator operator, List<COSBase> operands) throws IOException {
             linePath.setWindingRule(GeneralPath.WIND_EVEN_ODD);
             deleteCharsInPath();
-            linePath.reset();
+            resetPath();
         }
 
         @Override
@@ -261,7 +385,7 @@ public class PDFVisibleTextStripper extends PDFTextStripper {
         public void process(Operator operator, List<COSBase> operands) throws IOException {
             linePath.setWindingRule(GeneralPath.WIND_NON_ZERO);
             deleteCharsInPath();
-            linePath.reset();
+            resetPath();
         }
 
         @Override
@@ -314,6 +438,7 @@ public class PDFVisibleTextStripper extends PDFTextStripper {
             COSNumber y = (COSNumber) base1;
             Point2D.Float pos = context.transformedPoint(x.floatValue(), y.floatValue());
             linePath.moveTo(pos.x, pos.y);
+            linePathRectangle = null;
         }
 
         @Override
@@ -343,6 +468,7 @@ public class PDFVisibleTextStripper extends PDFTextStripper {
             Point2D.Float pos = context.transformedPoint(x.floatValue(), y.floatValue());
 
             linePath.lineTo(pos.x, pos.y);
+            linePathRectangle = null;
         }
 
         @Override
@@ -372,6 +498,7 @@ public class PDFVisibleTextStripper extends PDFTextStripper {
             Point2D.Float point3 = context.transformedPoint(x3.floatValue(), y3.floatValue());
 
             linePath.curveTo(point1.x, point1.y, point2.x, point2.y, point3.x, point3.y);
+            linePathRectangle = null;
         }
 
         @Override
@@ -398,6 +525,7 @@ public class PDFVisibleTextStripper extends PDFTextStripper {
             Point2D.Float point3 = context.transformedPoint(x3.floatValue(), y3.floatValue());
 
             linePath.curveTo(point1.x, point1.y, point3.x, point3.y, point3.x, point3.y);
+            linePathRectangle = null;
         }
 
         @Override
@@ -426,6 +554,7 @@ public class PDFVisibleTextStripper extends PDFTextStripper {
             Point2D.Float point3 = context.transformedPoint(x3.floatValue(), y3.floatValue());
 
             linePath.curveTo((float) currentPoint.getX(), (float) currentPoint.getY(), point2.x, point2.y, point3.x, point3.y);
+            linePathRectangle = null;
         }
 
         @Override
@@ -449,7 +578,7 @@ public class PDFVisibleTextStripper extends PDFTextStripper {
     public final class EndPath extends OperatorProcessor {
         @Override
         public void process(Operator operator, List<COSBase> operands) throws IOException {
-            linePath.reset();
+            resetPath();
         }
 
         @Override
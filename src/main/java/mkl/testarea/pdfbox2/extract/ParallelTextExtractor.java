@@ -0,0 +1,122 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+import mkl.testarea.pdfbox2.util.PageRangeExecution;
+
+/**
+ * <p>
+ * This class extracts text from a document in parallel by splitting it into
+ * page ranges and running an independent stripper instance per range on a
+ * thread pool. As {@link PDDocument} instances are not thread safe, each
+ * worker loads its own copy of the document. Thread count and range size
+ * are configured as described in {@link PageRangeExecution}.
+ * </p>
+ * <p>
+ * The results are returned in page order. As {@link PDFTextStripper} resets
+ * its line and article state for each page and does not write anything at
+ * document start or end, the concatenated range texts equal the text a
+ * single stripper would have returned for the whole document. Strippers
+ * with state spanning pages, e.g. {@link PDFTextSectionStripper} with
+ * sections continuing across a range boundary, get their state split at
+ * range boundaries; their per-range results are available via
+ * {@link #extract(File)} or {@link #extract(byte[])} for stitching.
+ * </p>
+ *
+ * @author mkl
+ */
+public class ParallelTextExtractor<S extends PDFTextStripper> extends PageRangeExecution {
+    /**
+     * Creates a configured stripper; it is called once per page range.
+     */
+    public interface StripperFactory<S extends PDFTextStripper> {
+        public S create() throws IOException;
+    }
+
+    /**
+     * The result for a page range: the stripper used and the text it extracted.
+     */
+    public static class PageRange<S extends PDFTextStripper> {
+        PageRange(int startPage, int endPage) {
+            this.startPage = startPage;
+            this.endPage = endPage;
+        }
+
+        public int getStartPage() {
+            return startPage;
+        }
+
+        public int getEndPage() {
+            return endPage;
+        }
+
+        public S getStripper() {
+            return stripper;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        final int startPage;
+        final int endPage;
+        S stripper;
+        String text;
+    }
+
+    public ParallelTextExtractor(StripperFactory<S> stripperFactory) {
+        this.stripperFactory = stripperFactory;
+    }
+
+    public String getText(File file) throws IOException {
+        return join(extract(file));
+    }
+
+    public String getText(byte[] bytes) throws IOException {
+        return join(extract(bytes));
+    }
+
+    public List<PageRange<S>> extract(File file) throws IOException {
+        return extract(() -> PDDocument.load(file));
+    }
+
+    public List<PageRange<S>> extract(byte[] bytes) throws IOException {
+        return extract(() -> PDDocument.load(bytes));
+    }
+
+    //
+    // helpers
+    //
+    List<PageRange<S>> extract(DocumentLoader loader) throws IOException {
+        int pageCount;
+        try (PDDocument document = loader.load()) {
+            pageCount = document.getNumberOfPages();
+        }
+        return run(1, pageCount, (startPage, endPage) -> strip(loader, new PageRange<>(startPage, endPage)));
+    }
+
+    PageRange<S> strip(DocumentLoader loader, PageRange<S> range) throws IOException {
+        try (PDDocument document = loader.load()) {
+            S stripper = stripperFactory.create();
+            stripper.setStartPage(range.startPage);
+            stripper.setEndPage(range.endPage);
+            range.text = stripper.getText(document);
+            range.stripper = stripper;
+        }
+        return range;
+    }
+
+    static String join(List<? extends PageRange<?>> ranges) {
+        StringBuilder builder = new StringBuilder();
+        for (PageRange<?> range : ranges)
+            builder.append(range.text);
+        return builder.toString();
+    }
+
+    final StripperFactory<S> stripperFactory;
+}
@@ -176,20 +176,21 @@ public class PdfBoxFinder extends PDFGraphicsStreamEngine {
 
     /**
      * Sorts the {@link #horizontalLines} and {@link #verticalLines} lists and
-     * merges fairly identical entries.
+     * merges fairly identical entries. The merge is a single in-place compaction
+     * pass instead of repeated removals from the middle of the lists.
      */
     void consolidateLists() {
         for (List<Interval> intervals : Arrays.asList(horizontalLines, verticalLines)) {
             intervals.sort(null);
-            for (int i = 1; i < intervals.size();) {
-                if (intervals.get(i-1).combinableWith(intervals.get(i))) {
-                    Interval interval = intervals.get(i-1).combineWith(intervals.get(i));
-                    intervals.set(i-1, interval);
-                    intervals.remove(i);
+            int size = 0;
+            for (Interval interval : intervals) {
+                if (size > 0 && intervals.get(size - 1).combinableWith(interval)) {
+                    intervals.set(size - 1, intervals.get(size - 1).combineWith(interval));
                 } else {
-                    i++;
+                    intervals.set(size++, interval);
                 }
             }
+            intervals.subList(size, intervals.size()).clear();
         }
     }
 
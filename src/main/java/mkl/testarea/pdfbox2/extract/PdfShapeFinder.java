@@ -0,0 +1,482 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+
+/**
+ * <a href="https://stackoverflow.com/questions/64093610/extract-checkbox-value-out-of-pdf-1-7-using-pdfbox">
+ * Extract Checkbox value out of PDF 1.7 using PDFBox
+ * </a>
+ * <p>
+ * This stream engine class generalizes the path matching of the original
+ * {@link PdfCheckBoxFinder} to a configurable vector shape matcher. Shapes
+ * like check boxes, radio buttons, signature lines, or logo outlines are
+ * registered as {@link ShapeTemplate} instances and each painted path is
+ * compared to them.
+ * </p>
+ * <p>
+ * A template describes a path by the sequence of its elements (lines,
+ * curves, and rectangles) and their coordinate differences. Templates are
+ * hashed by their element type sequence, so each path is only compared to
+ * the few templates of the same structure. Normalized templates match
+ * regardless of scale and rotation: both the path and the template are
+ * rotated and scaled to make the first difference vector the unit vector
+ * along the x axis before comparison.
+ * </p>
+ * <p>
+ * The anchors of the matches of each template are collected in a hashed
+ * grid, so looking up matches near some position, e.g. when combining
+ * multiple shapes, does not need to walk all matches.
+ * </p>
+ * <p>
+ * For a given {@link PDPage} <code>page</code> use this class like this:
+ * </p>
+ * <pre>
+ * PdfShapeFinder shapeFinder = new PdfShapeFinder(page);
+ * shapeFinder.addTemplate(template);
+ * shapeFinder.processPage(page);
+ * </pre>
+ * <p>
+ * Thereafter you can inspect <code>shapeFinder.getMatches()</code>.
+ * </p>
+ *
+ * @author mkl
+ */
+public class PdfShapeFinder extends PDFGraphicsStreamEngine {
+    /**
+     * The painting operations a path can be subject to.
+     */
+    public enum Painting { FILL, STROKE, FILL_AND_STROKE }
+
+    /**
+     * <p>
+     * A shape template, given by the types of its path elements and their coordinate
+     * differences: a line ('L') contributes the difference from its start to its end,
+     * a curve ('C') the differences from its start to its three other control points,
+     * and a rectangle ('R', as created by <code>re</code>) the differences from each
+     * corner to the next one for the first three corners. The anchor of a match is the
+     * start point of the path plus the given offset.
+     * </p>
+     * <p>
+     * By default templates match only paths of the exact same size and orientation
+     * with an absolute tolerance of 0.001 and any painting operation.
+     * </p>
+     */
+    public static class ShapeTemplate {
+        public ShapeTemplate(String name, String elementTypes, float[] diffs, float[] offsetToAnchor) {
+            if (elementTypes.isEmpty())
+                throw new IllegalArgumentException("A template requires at least one path element.");
+            int expectedLength = 0;
+            for (char type : elementTypes.toCharArray()) {
+                switch (type) {
+                case 'L': expectedLength += 2; break;
+                case 'C':
+                case 'R': expectedLength += 6; break;
+                default:
+                    throw new IllegalArgumentException("Unknown path element type " + type);
+                }
+            }
+            if (diffs.length != expectedLength)
+                throw new IllegalArgumentException(String.format("Element types %s require %d diffs, not %d.", elementTypes, expectedLength, diffs.length));
+            this.name = name;
+            this.elementTypes = elementTypes;
+            this.diffs = new double[diffs.length];
+            for (int i = 0; i < diffs.length; i++)
+                this.diffs[i] = diffs[i];
+            this.offsetToAnchor = offsetToAnchor.clone();
+            this.scale = Math.hypot(this.diffs[0], this.diffs[1]);
+            this.rotation = Math.atan2(this.diffs[1], this.diffs[0]);
+            this.normalizedDiffs = normalize(this.diffs, scale, rotation);
+        }
+
+        /**
+         * Creates a template of a path consisting only of lines.
+         */
+        public ShapeTemplate(String name, float[] lineDiffs, float[] offsetToAnchor) {
+            this(name, repeat('L', lineDiffs.length / 2), lineDiffs, offsetToAnchor);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Makes this template match regardless of scale and rotation; the coordinate
+         * differences are then compared after normalization with the given tolerance.
+         */
+        public ShapeTemplate setNormalized(boolean normalized, float normalizedTolerance) {
+            this.normalized = normalized;
+            this.normalizedTolerance = normalizedTolerance;
+            return this;
+        }
+
+        /**
+         * Restricts the painting operations of paths this template matches.
+         */
+        public ShapeTemplate setPaintings(Painting... paintings) {
+            this.paintings = EnumSet.noneOf(Painting.class);
+            this.paintings.addAll(Arrays.asList(paintings));
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+        static String repeat(char c, int count) {
+            char[] chars = new char[count];
+            Arrays.fill(chars, c);
+            return new String(chars);
+        }
+
+        final String name;
+        final String elementTypes;
+        final double[] diffs;
+        final float[] offsetToAnchor;
+        final double scale;
+        final double rotation;
+        final double[] normalizedDiffs;
+        boolean normalized = false;
+        float normalizedTolerance = 0.01f;
+        EnumSet<Painting> paintings = EnumSet.allOf(Painting.class);
+    }
+
+    /**
+     * A match of a template, given by its anchor and the scale and rotation
+     * (in radians) of the matched path relative to the template; for templates
+     * which are not normalized these are 1 and 0.
+     */
+    public static class ShapeMatch {
+        public ShapeTemplate getTemplate()  {   return template;    }
+        public Point2D getAnchor()          {   return anchor;      }
+        public double getScale()            {   return scale;       }
+        public double getRotation()         {   return rotation;    }
+
+        ShapeMatch(ShapeTemplate template, Point2D anchor, double scale, double rotation) {
+            this.template = template;
+            this.anchor = anchor;
+            this.scale = scale;
+            this.rotation = rotation;
+        }
+
+        final ShapeTemplate template;
+        final Point2D anchor;
+        final double scale;
+        final double rotation;
+    }
+
+    public PdfShapeFinder(PDPage page) {
+        super(page);
+    }
+
+    public void addTemplate(ShapeTemplate template) {
+        templatesByTypes.computeIfAbsent(template.elementTypes, key -> new ArrayList<>()).add(template);
+        matchesByTemplate.put(template, new ArrayList<>());
+        anchorsByTemplate.put(template, new PointGrid(ANCHOR_CELL_SIZE));
+    }
+
+    /**
+     * The matches of all templates in the order of the matched paths.
+     */
+    public List<ShapeMatch> getMatches() {
+        return Collections.unmodifiableList(matches);
+    }
+
+    /**
+     * The matches of the given template in the order of the matched paths.
+     */
+    public List<ShapeMatch> getMatches(ShapeTemplate template) {
+        List<ShapeMatch> templateMatches = matchesByTemplate.get(template);
+        return templateMatches == null ? Collections.emptyList() : Collections.unmodifiableList(templateMatches);
+    }
+
+    /**
+     * The anchors of the matches of the given template, indexed in a hashed grid.
+     */
+    PointGrid getAnchors(ShapeTemplate template) {
+        return anchorsByTemplate.get(template);
+    }
+
+    /**
+     * Compares the current path to the templates of the same element type
+     * sequence and records the matches.
+     */
+    void processPath(Painting painting) {
+        List<ShapeTemplate> candidates = path.isEmpty() ? null : templatesByTypes.get(getElementTypes());
+        if (candidates != null) {
+            double[] diffs = getDiffs();
+            Point2D start = getStart();
+            double[] normalizedDiffs = null;
+            double scale = 0, rotation = 0;
+
+            for (ShapeTemplate template : candidates) {
+                if (!template.paintings.contains(painting))
+                    continue;
+                Point2D anchor = null;
+                if (template.normalized) {
+                    if (normalizedDiffs == null) {
+                        double x = diffs[0], y = diffs[1];
+                        scale = Math.hypot(x, y);
+                        rotation = Math.atan2(y, x);
+                        normalizedDiffs = normalize(diffs, scale, rotation);
+                    }
+                    if (normalizedDiffs.length > 0 && approximatelyEquals(normalizedDiffs, template.normalizedDiffs, template.normalizedTolerance)) {
+                        double templateScale = template.scale;
+                        double matchScale = scale / templateScale;
+                        double matchRotation = Math.IEEEremainder(rotation - template.rotation, 2 * Math.PI);
+                        double cos = Math.cos(matchRotation), sin = Math.sin(matchRotation);
+                        double dx = template.offsetToAnchor[0] * matchScale, dy = template.offsetToAnchor[1] * matchScale;
+                        anchor = new Point2D.Float((float)(start.getX() + cos * dx - sin * dy), (float)(start.getY() + sin * dx + cos * dy));
+                        addMatch(new ShapeMatch(template, anchor, matchScale, matchRotation));
+                    }
+                } else if (approximatelyEquals(diffs, template.diffs, ABSOLUTE_TOLERANCE)) {
+                    anchor = new Point2D.Float((float)start.getX() + template.offsetToAnchor[0], (float)start.getY() + template.offsetToAnchor[1]);
+                    addMatch(new ShapeMatch(template, anchor, 1, 0));
+                }
+            }
+        }
+
+        clearPath();
+    }
+
+    void addMatch(ShapeMatch match) {
+        matches.add(match);
+        matchesByTemplate.get(match.template).add(match);
+        anchorsByTemplate.get(match.template).add(match.anchor);
+    }
+
+    String getElementTypes() {
+        StringBuilder builder = new StringBuilder(path.size());
+        for (PathElement element : path)
+            builder.append(element.getType());
+        return builder.toString();
+    }
+
+    double[] getDiffs() {
+        int length = 0;
+        for (PathElement element : path)
+            length += element.getType() == 'L' ? 2 : 6;
+        double[] diffs = new double[length];
+        int index = 0;
+        for (PathElement element : path)
+            index = element.addDiffs(diffs, index);
+        return diffs;
+    }
+
+    Point2D getStart() {
+        PathElement element = path.get(0);
+        if (element instanceof Line)
+            return ((Line) element).p0;
+        if (element instanceof Curve)
+            return ((Curve) element).p0;
+        return ((Rectangle) element).p0;
+    }
+
+    /**
+     * Rotates the difference vectors by the negative rotation and divides them by the scale;
+     * returns an empty array if the scale is too small for a meaningful normalization.
+     */
+    static double[] normalize(double[] diffs, double scale, double rotation) {
+        if (scale < 1e-6)
+            return new double[0];
+        double cos = Math.cos(-rotation), sin = Math.sin(-rotation);
+        double[] result = new double[diffs.length];
+        for (int i = 0; i < diffs.length; i += 2) {
+            double x = diffs[i], y = diffs[i + 1];
+            result[i] = (cos * x - sin * y) / scale;
+            result[i + 1] = (sin * x + cos * y) / scale;
+        }
+        return result;
+    }
+
+    static boolean approximatelyEquals(double[] values, double[] expected, double tolerance) {
+        if (values.length != expected.length)
+            return false;
+        for (int i = 0; i < values.length; i++) {
+            if (!(Math.abs(values[i] - expected[i]) < tolerance))
+                return false;
+        }
+        return true;
+    }
+
+    //
+    // PDFGraphicsStreamEngine overrides
+    //
+    @Override
+    public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) throws IOException {
+        moveTo((float) p0.getX(), (float) p0.getY());
+        path.add(new Rectangle(p0, p1, p2, p3));
+    }
+
+    @Override
+    public void moveTo(float x, float y) throws IOException {
+        currentPoint = new Point2D.Float(x, y);
+        currentStartPoint = currentPoint;
+    }
+
+    @Override
+    public void lineTo(float x, float y) throws IOException {
+        Point2D point = new Point2D.Float(x, y);
+        path.add(new Line(currentPoint, point));
+        currentPoint = point;
+    }
+
+    @Override
+    public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) throws IOException {
+        Point2D point1 = new Point2D.Float(x1, y1);
+        Point2D point2 = new Point2D.Float(x2, y2);
+        Point2D point3 = new Point2D.Float(x3, y3);
+        path.add(new Curve(currentPoint, point1, point2, point3));
+        currentPoint = point3;
+    }
+
+    @Override
+    public Point2D getCurrentPoint() throws IOException {
+        return currentPoint;
+    }
+
+    @Override
+    public void closePath() throws IOException {
+        path.add(new Line(currentPoint, currentStartPoint));
+        currentPoint = currentStartPoint;
+    }
+
+    @Override
+    public void endPath() throws IOException {
+        clearPath();
+    }
+
+    @Override
+    public void strokePath() throws IOException {
+        processPath(Painting.STROKE);
+    }
+
+    @Override
+    public void fillPath(int windingRule) throws IOException {
+        processPath(Painting.FILL);
+    }
+
+    @Override
+    public void fillAndStrokePath(int windingRule) throws IOException {
+        processPath(Painting.FILL_AND_STROKE);
+    }
+
+    @Override public void drawImage(PDImage pdImage) throws IOException { }
+    @Override public void clip(int windingRule) throws IOException { }
+    @Override public void shadingFill(COSName shadingName) throws IOException { }
+
+    //
+    // internal representation of a path
+    //
+    interface PathElement {
+        char getType();
+        int addDiffs(double[] diffs, int index);
+    }
+
+    class Rectangle implements PathElement {
+        final Point2D p0, p1, p2, p3;
+
+        Rectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) {
+            this.p0 = p0;
+            this.p1 = p1;
+            this.p2 = p2;
+            this.p3 = p3;
+        }
+
+        @Override
+        public char getType() {
+            return 'R';
+        }
+
+        @Override
+        public int addDiffs(double[] diffs, int index) {
+            index = addDiff(diffs, index, p0, p1);
+            index = addDiff(diffs, index, p1, p2);
+            return addDiff(diffs, index, p2, p3);
+        }
+    }
+
+    class Line implements PathElement {
+        final Point2D p0, p1;
+
+        Line(Point2D p0, Point2D p1) {
+            this.p0 = p0;
+            this.p1 = p1;
+        }
+
+        @Override
+        public char getType() {
+            return 'L';
+        }
+
+        @Override
+        public int addDiffs(double[] diffs, int index) {
+            return addDiff(diffs, index, p0, p1);
+        }
+    }
+
+    class Curve implements PathElement {
+        final Point2D p0, p1, p2, p3;
+
+        Curve(Point2D p0, Point2D p1, Point2D p2, Point2D p3) {
+            this.p0 = p0;
+            this.p1 = p1;
+            this.p2 = p2;
+            this.p3 = p3;
+        }
+
+        @Override
+        public char getType() {
+            return 'C';
+        }
+
+        @Override
+        public int addDiffs(double[] diffs, int index) {
+            index = addDiff(diffs, index, p0, p1);
+            index = addDiff(diffs, index, p0, p2);
+            return addDiff(diffs, index, p0, p3);
+        }
+    }
+
+    static int addDiff(double[] diffs, int index, Point2D from, Point2D to) {
+        diffs[index++] = to.getX() - from.getX();
+        diffs[index++] = to.getY() - from.getY();
+        return index;
+    }
+
+    Point2D currentPoint = null;
+    Point2D currentStartPoint = null;
+
+    void clearPath() {
+        path.clear();
+        currentPoint = null;
+        currentStartPoint = null;
+    }
+
+    //
+    // members
+    //
+    final static double ABSOLUTE_TOLERANCE = 0.001;
+    final static double ANCHOR_CELL_SIZE = 8;
+
+    final List<PathElement> path = new ArrayList<>();
+
+    final Map<String, List<ShapeTemplate>> templatesByTypes = new HashMap<>();
+    final Map<ShapeTemplate, List<ShapeMatch>> matchesByTemplate = new LinkedHashMap<>();
+    final Map<ShapeTemplate, PointGrid> anchorsByTemplate = new HashMap<>();
+    final List<ShapeMatch> matches = new ArrayList<>();
+}
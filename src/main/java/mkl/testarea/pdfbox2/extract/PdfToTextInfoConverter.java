@@ -3,12 +3,12 @@ package mkl.testarea.pdfbox2.extract;
 import java.awt.geom.Area;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -66,10 +66,12 @@ public class PdfToTextInfoConverter extends PDFTextStripper {
 
     private GeneralPath linePath;
 
-    private Map<GeneralPath, PDColor> filledPaths;
+    private FilledPathIndex<PDColor> filledPaths;
 
     private Map<TextPosition, PDColor> nonStrokingColors;
 
+    private final ClipRectangleTracker clipTracker = new ClipRectangleTracker();
+
     public PdfToTextInfoConverter(PDDocument pddfDoc) throws IOException {
         addOperator(new SetStrokingColorSpace());
         addOperator(new SetNonStrokingColorSpace());
@@ -107,7 +109,7 @@ public class PdfToTextInfoConverter extends PDFTextStripper {
         page = document.getPage(pageNum);
         rotation = page.getRotation();
         linePath = new GeneralPath();
-        filledPaths = new LinkedHashMap<>();
+        filledPaths = new FilledPathIndex<>(page.getCropBox().toGeneralPath().getBounds2D());
         nonStrokingColors = new HashMap<>();    
         Writer dummy = new OutputStreamWriter(new ByteArrayOutputStream());
         writeText(document, dummy); // This call starts the parsing process and calls writeString repeatedly.
@@ -126,11 +128,10 @@ public class PdfToTextInfoConverter extends PDFTextStripper {
     private Integer getCharacterBackgroundColor(TextPosition text) {
         Integer fillColorRgb = null;
         try {           
-            for (Map.Entry<GeneralPath, PDColor> filledPath : filledPaths.entrySet()) {
-                Vector center = getTextPositionCenterPoint(text);
-                if (filledPath.getKey().contains(lowerLeftX + center.getX(), lowerLeftY + center.getY())) {
-                    fillColorRgb = filledPath.getValue().toRGB();                   
-                }
+            Vector center = getTextPositionCenterPoint(text);
+            PDColor fillColor = filledPaths.getTopmost(lowerLeftX + center.getX(), lowerLeftY + center.getY());
+            if (fillColor != null) {
+                fillColorRgb = fillColor.toRGB();
             }
         } catch (IOException e) {
             logger.error("Could not convert color to RGB", e);
@@ -157,13 +158,28 @@ public class PdfToTextInfoConverter extends PDFTextStripper {
         }                       
 
         Vector center = getTextPositionCenterPoint(text);
-        Area area = gs.getCurrentClippingPath();
-        if (area == null || area.contains(lowerLeftX + center.getX(), lowerLeftY + center.getY())) {            
+        Rectangle2D clipRectangle = clipTracker.getClipRectangle(gs);
+        boolean visible;
+        if (clipRectangle != null) {
+            visible = clipRectangle.contains(lowerLeftX + center.getX(), lowerLeftY + center.getY());
+        } else {
+            Area area = gs.getCurrentClippingPath();
+            visible = area == null || area.contains(lowerLeftX + center.getX(), lowerLeftY + center.getY());
+        }
+        if (visible) {
             nonStrokingColors.put(text, gs.getNonStrokingColor());
             super.processTextPosition(text);
         }
     }
 
+    /**
+     * Returns the tracker of rectangular clip paths with its counters of
+     * arithmetic rectangle intersections and {@link Area} fallbacks.
+     */
+    public ClipRectangleTracker getClipTracker() {
+        return clipTracker;
+    }
+
     @Override
     protected void writeString(String string, List<TextPosition> textPositions) throws IOException {
         for (TextPosition text : textPositions) {           
@@ -201,7 +217,7 @@ public class PdfToTextInfoConverter extends PDFTextStripper {
     }
 
     void addFillPath(PDColor color) {
-        filledPaths.put((GeneralPath)linePath.clone(), color);
+        filledPaths.add((GeneralPath)linePath.clone(), color);
     }
 
     public final class AppendRectangleToPath extends OperatorProcessor {
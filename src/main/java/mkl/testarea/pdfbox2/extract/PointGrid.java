@@ -0,0 +1,86 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A hashed grid of points, used to look up points near a given point or
+ * inside a given rectangle without walking all of them. Only the cells
+ * actually containing points are allocated, so the grid is not bounded.
+ * </p>
+ *
+ * @author mkl
+ */
+class PointGrid {
+    PointGrid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    void add(Point2D point) {
+        points.add(point);
+        cells.computeIfAbsent(key(cell(point.getX()), cell(point.getY())), key -> new ArrayList<>()).add(point);
+    }
+
+    /**
+     * The points in the order they have been added.
+     */
+    List<Point2D> getPoints() {
+        return Collections.unmodifiableList(points);
+    }
+
+    /**
+     * Checks whether there is a point whose coordinates each differ by less than the
+     * tolerance from those of the given point.
+     */
+    boolean containsApproximately(Point2D anchor, double tolerance) {
+        double x = anchor.getX(), y = anchor.getY();
+        for (int row = cell(y - tolerance); row <= cell(y + tolerance); row++) {
+            for (int column = cell(x - tolerance); column <= cell(x + tolerance); column++) {
+                List<Point2D> cell = cells.get(key(column, row));
+                if (cell == null)
+                    continue;
+                for (Point2D point : cell) {
+                    if (Math.abs(point.getX() - x) < tolerance && Math.abs(point.getY() - y) < tolerance)
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether there is a point strictly inside the rectangle spanned by the given corners.
+     */
+    boolean containsInRectangle(Point2D lowerLeft, Point2D upperRight) {
+        for (int row = cell(lowerLeft.getY()); row <= cell(upperRight.getY()); row++) {
+            for (int column = cell(lowerLeft.getX()); column <= cell(upperRight.getX()); column++) {
+                List<Point2D> cell = cells.get(key(column, row));
+                if (cell == null)
+                    continue;
+                for (Point2D point : cell) {
+                    if (lowerLeft.getX() < point.getX() && point.getX() < upperRight.getX() &&
+                            lowerLeft.getY() < point.getY() && point.getY() < upperRight.getY())
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    int cell(double value) {
+        return (int) Math.floor(value / cellSize);
+    }
+
+    static long key(int column, int row) {
+        return ((long) column << 32) | (row & 0xffffffffL);
+    }
+
+    final double cellSize;
+    final List<Point2D> points = new ArrayList<>();
+    final Map<Long, List<Point2D>> cells = new HashMap<>();
+}
@@ -0,0 +1,69 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * <p>
+ * A simple uniform grid index of rectangles in a bounded area, used to
+ * look up the rectangles overlapping a given area without walking all
+ * of them. Each rectangle is registered in every cell of a {@link UniformGrid}
+ * it overlaps; rectangles reaching beyond the grid bounds are registered
+ * in the nearest border cells.
+ * </p>
+ * <p>
+ * Rectangles are compared by value and must not be changed while they
+ * are in the grid.
+ * </p>
+ *
+ * @author mkl
+ */
+class RectangleGrid {
+    RectangleGrid(Rectangle2D bounds, int columns, int rows) {
+        this.grid = new UniformGrid<>(bounds, columns, rows);
+    }
+
+    boolean add(Rectangle2D rectangle) {
+        if (!all.add(rectangle))
+            return false;
+        grid.add(rectangle, rectangle);
+        return true;
+    }
+
+    boolean remove(Rectangle2D rectangle) {
+        if (!all.remove(rectangle))
+            return false;
+        grid.remove(rectangle, rectangle);
+        return true;
+    }
+
+    /**
+     * Collects the rectangles whose closed bounds intersect the closed
+     * bounds of the given area.
+     */
+    Set<Rectangle2D> query(Rectangle2D area) {
+        double areaMinX = area.getMinX(), areaMaxX = area.getMaxX();
+        double areaMinY = area.getMinY(), areaMaxY = area.getMaxY();
+        Set<Rectangle2D> result = new LinkedHashSet<>();
+        grid.forEachInArea(area, rectangle -> {
+            if (rectangle.getMinX() <= areaMaxX && rectangle.getMaxX() >= areaMinX &&
+                    rectangle.getMinY() <= areaMaxY && rectangle.getMaxY() >= areaMinY)
+                result.add(rectangle);
+        });
+        return result;
+    }
+
+    Collection<Rectangle2D> values() {
+        return Collections.unmodifiableCollection(all);
+    }
+
+    int size() {
+        return all.size();
+    }
+
+    final UniformGrid<Rectangle2D> grid;
+    final Set<Rectangle2D> all = new LinkedHashSet<>();
+}
@@ -0,0 +1,154 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.util.Arrays;
+
+import mkl.testarea.pdfbox2.util.SortableFloats;
+
+/**
+ * <p>
+ * A list of ruling lines of one orientation, each given by its position
+ * across (e.g. the y coordinate of a horizontal line) and its extent along
+ * the orientation, stored in primitive arrays.
+ * </p>
+ * <p>
+ * {@link #consolidate(float)} sorts the lines by position and extent and
+ * merges lines of fairly identical position and overlapping or touching
+ * extent in a single linear pass.
+ * </p>
+ *
+ * @author mkl
+ */
+class RulingLines {
+    void add(float position, float from, float to) {
+        if (size == positions.length) {
+            int capacity = Math.max(16, 2 * size);
+            positions = Arrays.copyOf(positions, capacity);
+            froms = Arrays.copyOf(froms, capacity);
+            tos = Arrays.copyOf(tos, capacity);
+        }
+        positions[size] = position;
+        froms[size] = Math.min(from, to);
+        tos[size] = Math.max(from, to);
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    float getPosition(int index) {
+        return positions[index];
+    }
+
+    float getFrom(int index) {
+        return froms[index];
+    }
+
+    float getTo(int index) {
+        return tos[index];
+    }
+
+    /**
+     * Returns the index of the first line with a position of at least the given one.
+     * The lines must be consolidated.
+     */
+    int firstIndexFrom(float position) {
+        int low = 0, high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (positions[middle] < position)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * <p>
+     * Groups the lines into bands of positions not more than the tolerance
+     * apart from the first position in the band, and merges the lines in
+     * the same band whose extents overlap or are at most the tolerance apart.
+     * The merged lines are positioned in the middle of their band.
+     * </p>
+     * <p>
+     * Sorting is done on primitive keys combining the sort criterion and the
+     * line index; the merge is a single pass over the lines sorted by band
+     * and start.
+     * </p>
+     */
+    void consolidate(float tolerance) {
+        if (size == 0)
+            return;
+
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++)
+            keys[i] = key(SortableFloats.sortableBits(froms[i]), i);
+        Arrays.sort(keys);
+        int[] rankToIndex = new int[size];
+        int[] ranks = new int[size];
+        for (int rank = 0; rank < size; rank++) {
+            int index = (int) keys[rank];
+            rankToIndex[rank] = index;
+            ranks[index] = rank;
+        }
+
+        for (int i = 0; i < size; i++)
+            keys[i] = key(SortableFloats.sortableBits(positions[i]), i);
+        Arrays.sort(keys);
+        int[] bands = new int[size];
+        float[] bandPositions = new float[size];
+        int bandCount = 0;
+        float bandStart = 0, bandEnd = 0;
+        for (int k = 0; k < size; k++) {
+            int index = (int) keys[k];
+            float position = positions[index];
+            if (bandCount == 0 || position - bandStart > tolerance) {
+                if (bandCount > 0)
+                    bandPositions[bandCount - 1] = (bandStart + bandEnd) / 2;
+                bandStart = position;
+                bandCount++;
+            }
+            bandEnd = position;
+            bands[index] = bandCount - 1;
+        }
+        bandPositions[bandCount - 1] = (bandStart + bandEnd) / 2;
+
+        for (int i = 0; i < size; i++)
+            keys[i] = key(bands[i], ranks[i]);
+        Arrays.sort(keys);
+
+        float[] newPositions = new float[size];
+        float[] newFroms = new float[size];
+        float[] newTos = new float[size];
+        int newSize = 0;
+        int currentBand = -1;
+        for (int k = 0; k < size; k++) {
+            int index = rankToIndex[(int) keys[k]];
+            int band = bands[index];
+            if (band == currentBand && froms[index] <= newTos[newSize - 1] + tolerance) {
+                newTos[newSize - 1] = Math.max(newTos[newSize - 1], tos[index]);
+            } else {
+                newPositions[newSize] = bandPositions[band];
+                newFroms[newSize] = froms[index];
+                newTos[newSize] = tos[index];
+                newSize++;
+                currentBand = band;
+            }
+        }
+
+        positions = newPositions;
+        froms = newFroms;
+        tos = newTos;
+        size = newSize;
+    }
+
+    static long key(int high, int low) {
+        return ((long) high << 32) | (low & 0xffffffffL);
+    }
+
+    float[] positions = new float[0];
+    float[] froms = new float[0];
+    float[] tos = new float[0];
+    int size = 0;
+}
@@ -0,0 +1,485 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+
+/**
+ * <a href="https://stackoverflow.com/questions/51380677/extracting-text-from-pdf-java-using-pdfbox-library-from-a-tables-rows-with-di">
+ * Extracting text from pdf (java using pdfbox library) from a table's rows with different heights
+ * </a>
+ * <br/>
+ * <a href="https://www.info.uvt.ro/wp-content/uploads/2018/07/Programare-licenta-5-Iulie-2018_1.pdf">
+ * Programare-licenta-5-Iulie-2018_1.pdf
+ * </a>
+ * <p>
+ * This class generalizes the {@link PdfBoxFinder} to a document-wide table
+ * grid engine. Ruling lines are collected not only from thin filled
+ * rectangles but from any thin filled polygon and from stroked straight
+ * line segments (<code>re</code> as well as <code>m</code>/<code>l</code>
+ * paths) in any color but white. They are kept in primitive {@link RulingLines}
+ * structures which are merged in a single linear pass.
+ * </p>
+ * <p>
+ * On each page, horizontal and vertical ruling lines crossing each other
+ * are grouped into tables, and each table results in a {@link TableGrid}
+ * with the distinct ruling positions as row and column boundaries. If the
+ * bottom-most table of a page and the top-most table of the following page
+ * have the same column boundaries, the latter is considered a continuation
+ * of the former, and both are returned as segments of the same {@link Table}.
+ * </p>
+ * <p>
+ * Use this class like this:
+ * </p>
+ * <pre>
+ * List&lt;Table&gt; tables = new TableGridFinder().findTables(document);
+ * </pre>
+ *
+ * @author mkl
+ */
+public class TableGridFinder {
+    /**
+     * Sets the maximum thickness of a filled path or the maximum deviation of
+     * a stroked line segment from the horizontal or vertical to be considered
+     * a ruling line; the default is 3, like in {@link PdfBoxFinder}.
+     */
+    public void setMaxLineThickness(float maxLineThickness) {
+        this.maxLineThickness = maxLineThickness;
+    }
+
+    /**
+     * Sets the tolerance for ruling line positions to be considered identical
+     * and for ruling lines to be considered to cross or to continue each other;
+     * the default is 2.
+     */
+    public void setTolerance(float tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Determines the tables in the given document in a single pass over its pages,
+     * stitching tables continued across page breaks.
+     */
+    public List<Table> findTables(PDDocument document) throws IOException {
+        List<Table> tables = new ArrayList<>();
+        Table openTable = null;
+        int pageIndex = 0;
+        for (PDPage page : document.getPages()) {
+            List<TableGrid> grids = findGrids(page, pageIndex++);
+            for (int i = 0; i < grids.size(); i++) {
+                TableGrid grid = grids.get(i);
+                if (i == 0 && openTable != null && openTable.isContinuedBy(grid, tolerance)) {
+                    openTable.segments.add(grid);
+                } else {
+                    tables.add(new Table(grid));
+                }
+            }
+            openTable = grids.isEmpty() ? null : tables.get(tables.size() - 1);
+        }
+        return tables;
+    }
+
+    /**
+     * Determines the table grids on the given page, sorted from top to bottom.
+     */
+    public List<TableGrid> findGrids(PDPage page, int pageIndex) throws IOException {
+        RulingCollector collector = new RulingCollector(page);
+        collector.processPage(page);
+        RulingLines horizontals = collector.horizontals;
+        RulingLines verticals = collector.verticals;
+        horizontals.consolidate(tolerance);
+        verticals.consolidate(tolerance);
+
+        int horizontalCount = horizontals.size();
+        int[] parents = new int[horizontalCount + verticals.size()];
+        for (int i = 0; i < parents.length; i++)
+            parents[i] = i;
+        for (int i = 0; i < horizontalCount; i++) {
+            float position = horizontals.getPosition(i);
+            float to = horizontals.getTo(i) + tolerance;
+            for (int j = verticals.firstIndexFrom(horizontals.getFrom(i) - tolerance); j < verticals.size() && verticals.getPosition(j) <= to; j++) {
+                if (verticals.getFrom(j) - tolerance <= position && position <= verticals.getTo(j) + tolerance)
+                    union(parents, i, horizontalCount + j);
+            }
+        }
+
+        long[] members = new long[parents.length];
+        for (int i = 0; i < parents.length; i++)
+            members[i] = RulingLines.key(find(parents, i), i);
+        Arrays.sort(members);
+
+        List<TableGrid> grids = new ArrayList<>();
+        float[] rows = new float[horizontalCount];
+        float[] columns = new float[verticals.size()];
+        for (int k = 0; k < members.length;) {
+            int root = (int) (members[k] >>> 32);
+            int rowCount = 0, columnCount = 0;
+            for (; k < members.length && (int) (members[k] >>> 32) == root; k++) {
+                int index = (int) members[k];
+                if (index < horizontalCount)
+                    rows[rowCount++] = horizontals.getPosition(index);
+                else
+                    columns[columnCount++] = verticals.getPosition(index - horizontalCount);
+            }
+
+            float[] rowBoundaries = distinct(rows, rowCount);
+            float[] columnBoundaries = distinct(columns, columnCount);
+            if (rowBoundaries.length < 2 || columnBoundaries.length < 2)
+                continue;
+            reverse(rowBoundaries);
+            grids.add(new TableGrid(pageIndex, columnBoundaries, rowBoundaries));
+        }
+
+        grids.sort((a, b) -> Float.compare(b.rows[0], a.rows[0]));
+        return grids;
+    }
+
+    //
+    // helpers
+    //
+    static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    static void union(int[] parents, int i, int j) {
+        int rootI = find(parents, i);
+        int rootJ = find(parents, j);
+        if (rootI != rootJ)
+            parents[Math.max(rootI, rootJ)] = Math.min(rootI, rootJ);
+    }
+
+    /**
+     * Sorts the first <code>count</code> values ascending and drops values not
+     * more than the tolerance above the previous kept value.
+     */
+    float[] distinct(float[] values, int count) {
+        Arrays.sort(values, 0, count);
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (size == 0 || values[i] - values[size - 1] > tolerance)
+                values[size++] = values[i];
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    static void reverse(float[] values) {
+        for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+            float value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+    //
+    // inner classes
+    //
+    /**
+     * A table, possibly continued across page breaks, consisting of one
+     * {@link TableGrid} segment per page.
+     */
+    public static class Table {
+        Table(TableGrid grid) {
+            segments.add(grid);
+        }
+
+        public List<TableGrid> getSegments() {
+            return Collections.unmodifiableList(segments);
+        }
+
+        public int getRowCount() {
+            int rowCount = 0;
+            for (TableGrid segment : segments)
+                rowCount += segment.getRowCount();
+            return rowCount;
+        }
+
+        public int getColumnCount() {
+            return segments.get(0).getColumnCount();
+        }
+
+        boolean isContinuedBy(TableGrid grid, float tolerance) {
+            TableGrid last = segments.get(segments.size() - 1);
+            if (grid.pageIndex != last.pageIndex + 1 || grid.columns.length != last.columns.length)
+                return false;
+            for (int i = 0; i < grid.columns.length; i++) {
+                if (Math.abs(grid.columns[i] - last.columns[i]) > tolerance)
+                    return false;
+            }
+            return true;
+        }
+
+        final List<TableGrid> segments = new ArrayList<>();
+    }
+
+    /**
+     * The grid of a table on a single page, given by its column boundaries
+     * from left to right and its row boundaries from top to bottom, in the
+     * PDF coordinate system.
+     */
+    public static class TableGrid {
+        TableGrid(int pageIndex, float[] columns, float[] rows) {
+            this.pageIndex = pageIndex;
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        public int getPageIndex() {
+            return pageIndex;
+        }
+
+        public float[] getColumnBoundaries() {
+            return columns.clone();
+        }
+
+        public float[] getRowBoundaries() {
+            return rows.clone();
+        }
+
+        public int getRowCount() {
+            return rows.length - 1;
+        }
+
+        public int getColumnCount() {
+            return columns.length - 1;
+        }
+
+        /**
+         * Returns the cell in the given row (0 being the top row) and column
+         * (0 being the left column).
+         */
+        public Rectangle2D getCell(int row, int column) {
+            return new Rectangle2D.Float(columns[column], rows[row + 1], columns[column + 1] - columns[column], rows[row] - rows[row + 1]);
+        }
+
+        public Rectangle2D getBounds() {
+            return new Rectangle2D.Float(columns[0], rows[rows.length - 1], columns[columns.length - 1] - columns[0], rows[0] - rows[rows.length - 1]);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("page %d: %d x %d cells, columns %s, rows %s", pageIndex, getRowCount(), getColumnCount(), Arrays.toString(columns), Arrays.toString(rows));
+        }
+
+        final int pageIndex;
+        final float[] columns;
+        final float[] rows;
+    }
+
+    /**
+     * This stream engine collects the ruling lines of a page. The current path
+     * is kept as point coordinates with a flag for points reached by a curve,
+     * plus the start index and closed state of each sub path.
+     */
+    class RulingCollector extends PDFGraphicsStreamEngine {
+        RulingCollector(PDPage page) {
+            super(page);
+        }
+
+        void addPoint(float x, float y, boolean curved) {
+            if (pointCount == xs.length) {
+                int capacity = 2 * pointCount;
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+                curves = Arrays.copyOf(curves, capacity);
+            }
+            xs[pointCount] = x;
+            ys[pointCount] = y;
+            curves[pointCount] = curved;
+            pointCount++;
+        }
+
+        void startSubpath(float x, float y) {
+            if (subpathCount == subpathStarts.length) {
+                subpathStarts = Arrays.copyOf(subpathStarts, 2 * subpathCount);
+                subpathsClosed = Arrays.copyOf(subpathsClosed, 2 * subpathCount);
+            }
+            subpathStarts[subpathCount] = pointCount;
+            subpathsClosed[subpathCount] = false;
+            subpathCount++;
+            addPoint(x, y, false);
+        }
+
+        void clearPath() {
+            pointCount = 0;
+            subpathCount = 0;
+        }
+
+        /**
+         * Adds the thin sub paths without curves as ruling lines.
+         */
+        void processFill() throws IOException {
+            if (!isWhite(getGraphicsState().getNonStrokingColor())) {
+                for (int subpath = 0; subpath < subpathCount; subpath++) {
+                    int start = subpathStarts[subpath];
+                    int end = subpath + 1 < subpathCount ? subpathStarts[subpath + 1] : pointCount;
+                    if (end - start < 3)
+                        continue;
+                    float minX = xs[start], maxX = minX, minY = ys[start], maxY = minY;
+                    boolean curved = false;
+                    for (int i = start + 1; i < end; i++) {
+                        curved |= curves[i];
+                        minX = Math.min(minX, xs[i]);
+                        maxX = Math.max(maxX, xs[i]);
+                        minY = Math.min(minY, ys[i]);
+                        maxY = Math.max(maxY, ys[i]);
+                    }
+                    if (curved)
+                        continue;
+                    float width = maxX - minX;
+                    float height = maxY - minY;
+                    if (height <= maxLineThickness && width > maxLineThickness)
+                        horizontals.add((minY + maxY) / 2, minX, maxX);
+                    else if (width <= maxLineThickness && height > maxLineThickness)
+                        verticals.add((minX + maxX) / 2, minY, maxY);
+                }
+            }
+        }
+
+        /**
+         * Adds the fairly horizontal and vertical straight segments as ruling lines.
+         */
+        void processStroke() throws IOException {
+            if (!isWhite(getGraphicsState().getStrokingColor())) {
+                for (int subpath = 0; subpath < subpathCount; subpath++) {
+                    int start = subpathStarts[subpath];
+                    int end = subpath + 1 < subpathCount ? subpathStarts[subpath + 1] : pointCount;
+                    for (int i = start + 1; i < end; i++) {
+                        if (!curves[i])
+                            processSegment(xs[i - 1], ys[i - 1], xs[i], ys[i]);
+                    }
+                    if (subpathsClosed[subpath] && end - start > 1)
+                        processSegment(xs[end - 1], ys[end - 1], xs[start], ys[start]);
+                }
+            }
+        }
+
+        void processSegment(float x0, float y0, float x1, float y1) {
+            float xDiff = Math.abs(x1 - x0);
+            float yDiff = Math.abs(y1 - y0);
+            if (yDiff <= maxLineThickness && yDiff * 10 < xDiff)
+                horizontals.add((y0 + y1) / 2, x0, x1);
+            else if (xDiff <= maxLineThickness && xDiff * 10 < yDiff)
+                verticals.add((x0 + x1) / 2, y0, y1);
+        }
+
+        /**
+         * Checks whether the given color is white'ish; invisible lines on white
+         * ground shall not be considered.
+         */
+        boolean isWhite(PDColor color) {
+            try {
+                int value = color.toRGB();
+                return (value & 0xf8f8f8) == 0xf8f8f8;
+            } catch (IOException | RuntimeException e) {
+                return false;
+            }
+        }
+
+        //
+        // PDFGraphicsStreamEngine overrides
+        //
+        @Override
+        public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) throws IOException {
+            startSubpath((float) p0.getX(), (float) p0.getY());
+            addPoint((float) p1.getX(), (float) p1.getY(), false);
+            addPoint((float) p2.getX(), (float) p2.getY(), false);
+            addPoint((float) p3.getX(), (float) p3.getY(), false);
+            subpathsClosed[subpathCount - 1] = true;
+        }
+
+        @Override
+        public void moveTo(float x, float y) throws IOException {
+            startSubpath(x, y);
+        }
+
+        @Override
+        public void lineTo(float x, float y) throws IOException {
+            if (subpathCount == 0)
+                startSubpath(x, y);
+            else
+                addPoint(x, y, false);
+        }
+
+        @Override
+        public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) throws IOException {
+            if (subpathCount == 0)
+                startSubpath(x3, y3);
+            else
+                addPoint(x3, y3, true);
+        }
+
+        @Override
+        public Point2D getCurrentPoint() throws IOException {
+            return pointCount == 0 ? null : new Point2D.Float(xs[pointCount - 1], ys[pointCount - 1]);
+        }
+
+        @Override
+        public void closePath() throws IOException {
+            if (subpathCount > 0) {
+                subpathsClosed[subpathCount - 1] = true;
+                int start = subpathStarts[subpathCount - 1];
+                startSubpath(xs[start], ys[start]);
+            }
+        }
+
+        @Override
+        public void endPath() throws IOException {
+            clearPath();
+        }
+
+        @Override
+        public void strokePath() throws IOException {
+            processStroke();
+            clearPath();
+        }
+
+        @Override
+        public void fillPath(int windingRule) throws IOException {
+            processFill();
+            clearPath();
+        }
+
+        @Override
+        public void fillAndStrokePath(int windingRule) throws IOException {
+            processFill();
+            processStroke();
+            clearPath();
+        }
+
+        @Override public void drawImage(PDImage pdImage) throws IOException { }
+        @Override public void clip(int windingRule) throws IOException { }
+        @Override public void shadingFill(COSName shadingName) throws IOException { }
+
+        final RulingLines horizontals = new RulingLines();
+        final RulingLines verticals = new RulingLines();
+
+        float[] xs = new float[64];
+        float[] ys = new float[64];
+        boolean[] curves = new boolean[64];
+        int pointCount = 0;
+        int[] subpathStarts = new int[16];
+        boolean[] subpathsClosed = new boolean[16];
+        int subpathCount = 0;
+    }
+
+    //
+    // members
+    //
+    float maxLineThickness = 3;
+    float tolerance = 2;
+}
@@ -1,6 +1,7 @@
 // $Id$
 package mkl.testarea.pdfbox2.extract;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.pdfbox.text.TextPosition;
@@ -9,7 +10,19 @@ import org.apache.pdfbox.text.TextPosition;
  * This class implements {@link CharSequence} for a list of {@link TextPosition}
  * instances to allow for use as a {@link String}-like object in case of
  * character-oriented operations.
- * 
+ * <p>
+ * The characters are the concatenated Unicode mappings of the text positions,
+ * so ligatures and other multi-character mappings contribute all their
+ * characters. They are collected lazily into a <code>char</code> buffer with
+ * a parallel map from character offset to text position index. That buffer is
+ * shared by all sub-sequences, so e.g. regular expression matching on a whole
+ * page does not look up a text position and its Unicode string per character.
+ * </p>
+ * <p>
+ * Indexes in the {@link CharSequence} methods and {@link #textPositionAt(int)}
+ * are character offsets; the constructors take text position indexes.
+ * </p>
+ *
  * @author mkl
  */
 public class TextPositionSequence implements CharSequence
@@ -21,7 +34,18 @@ public class TextPositionSequence implements CharSequence
 
     public TextPositionSequence(List<TextPosition> textPositions, int start, int end)
     {
-        this.textPositions = textPositions;
+        this.buffer = new CharBuffer(textPositions);
+        this.startGlyph = start;
+        this.endGlyph = end;
+        this.start = -1;
+        this.end = -1;
+    }
+
+    TextPositionSequence(CharBuffer buffer, int start, int end)
+    {
+        this.buffer = buffer;
+        this.startGlyph = -1;
+        this.endGlyph = -1;
         this.start = start;
         this.end = end;
     }
@@ -29,56 +53,148 @@ public class TextPositionSequence implements CharSequence
     @Override
     public int length()
     {
+        resolve();
         return end - start;
     }
 
     @Override
     public char charAt(int index)
     {
-        TextPosition textPosition = textPositionAt(index);
-        String text = textPosition.getUnicode();
-        return text.charAt(0);
+        resolve();
+        return buffer.chars[start + index];
     }
 
     @Override
     public TextPositionSequence subSequence(int start, int end)
     {
-        return new TextPositionSequence(textPositions, this.start + start, this.start + end);
+        resolve();
+        return new TextPositionSequence(buffer, this.start + start, this.start + end);
     }
 
     @Override
     public String toString()
     {
-        StringBuilder builder = new StringBuilder(length());
-        for (int i = 0; i < length(); i++)
+        if (string == null)
         {
-            builder.append(charAt(i));
+            resolve();
+            string = new String(buffer.chars, start, end - start);
         }
-        return builder.toString();
+        return string;
     }
 
+    /**
+     * @return the text position the character at the given offset stems from.
+     */
     public TextPosition textPositionAt(int index)
     {
-        return textPositions.get(start + index);
+        resolve();
+        return buffer.textPositions.get(buffer.glyphIndexes[start + index]);
     }
 
     public float getX()
     {
-        return textPositions.get(start).getXDirAdj();
+        resolve();
+        return buffer.textPositions.get(buffer.glyphIndexAt(start)).getXDirAdj();
     }
 
     public float getY()
     {
-        return textPositions.get(start).getYDirAdj();
+        resolve();
+        return buffer.textPositions.get(buffer.glyphIndexAt(start)).getYDirAdj();
     }
 
     public float getWidth()
     {
-        TextPosition first = textPositions.get(start);
-        TextPosition last = textPositions.get(end);
+        resolve();
+        TextPosition first = buffer.textPositions.get(buffer.glyphIndexAt(start));
+        TextPosition last = buffer.textPositions.get(buffer.glyphIndexAt(end));
         return last.getWidthDirAdj() + last.getXDirAdj() - first.getXDirAdj();
     }
 
-    final List<TextPosition> textPositions;
-    final int start, end;
+    //
+    // helpers
+    //
+    /**
+     * Translates the text position range given to the public constructor
+     * into character offsets, building the shared buffer if necessary.
+     */
+    void resolve()
+    {
+        if (start < 0)
+        {
+            buffer.build();
+            start = buffer.glyphOffsets[startGlyph];
+            end = buffer.glyphOffsets[endGlyph];
+        }
+    }
+
+    //
+    // inner classes
+    //
+    /**
+     * The characters of all the text positions of a list and the maps between
+     * character offsets and text position indexes.
+     */
+    static class CharBuffer
+    {
+        CharBuffer(List<TextPosition> textPositions)
+        {
+            this.textPositions = textPositions;
+        }
+
+        void build()
+        {
+            if (chars != null)
+                return;
+
+            int size = textPositions.size();
+            int[] offsets = new int[size + 1];
+            char[] buffer = new char[size];
+            int[] indexes = new int[size];
+            int length = 0;
+            for (int i = 0; i < size; i++)
+            {
+                offsets[i] = length;
+                String text = textPositions.get(i).getUnicode();
+                if (text == null)
+                    continue;
+                int textLength = text.length();
+                if (length + textLength > buffer.length)
+                {
+                    int capacity = Math.max(buffer.length * 2, length + textLength);
+                    buffer = Arrays.copyOf(buffer, capacity);
+                    indexes = Arrays.copyOf(indexes, capacity);
+                }
+                text.getChars(0, textLength, buffer, length);
+                for (int j = 0; j < textLength; j++)
+                    indexes[length + j] = i;
+                length += textLength;
+            }
+            offsets[size] = length;
+
+            glyphOffsets = offsets;
+            glyphIndexes = indexes;
+            chars = length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+        }
+
+        /**
+         * @return the index of the text position the character at the given offset
+         * stems from; for the offset right after the last character, this is the
+         * number of text positions.
+         */
+        int glyphIndexAt(int offset)
+        {
+            return offset < chars.length ? glyphIndexes[offset] : textPositions.size();
+        }
+
+        final List<TextPosition> textPositions;
+        char[] chars;
+        int[] glyphIndexes;
+        int[] glyphOffsets;
+    }
+
+    final CharBuffer buffer;
+    final int startGlyph, endGlyph;
+    int start, end;
+    String string;
 }
@@ -31,6 +31,22 @@ public class TextSection
         this.body = new ArrayList<>(body);
     }
 
+    private TextSection(TextSectionDefinition definition, List<List<TextPosition>> header, List<List<List<TextPosition>>> body, boolean copy)
+    {
+        this.definition = definition;
+        this.header = copy ? new ArrayList<>(header) : header;
+        this.body = copy ? new ArrayList<>(body) : body;
+    }
+
+    /**
+     * Creates a section taking over the given lists instead of copying them; they must
+     * not be changed afterwards.
+     */
+    static TextSection adopt(TextSectionDefinition definition, List<List<TextPosition>> header, List<List<List<TextPosition>>> body)
+    {
+        return new TextSection(definition, header, body, false);
+    }
+
     @Override
     public String toString()
     {
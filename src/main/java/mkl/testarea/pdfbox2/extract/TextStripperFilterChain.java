@@ -0,0 +1,212 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.graphics.state.PDGraphicsState;
+import org.apache.pdfbox.text.TextPosition;
+
+import mkl.testarea.pdfbox2.extract.PDFFilteringTextStripper.TextStripperFilter;
+
+/**
+ * <p>
+ * This {@link TextStripperFilter} combines a number of filters, accepting a
+ * text position if all of them accept it. Each filter declares a relative
+ * cost, and the filters are evaluated in the order of increasing cost, so an
+ * expensive check (e.g. a clip area test) is not run for a glyph a cheap
+ * check (e.g. a font size test) has already rejected.
+ * </p>
+ * <p>
+ * Filters depending on the graphics state only are added using
+ * {@link #addGraphicsStateFilter(String, GraphicsStateFilter, double)}.
+ * Their decision is evaluated once and reused for all glyphs drawn with the
+ * same graphics state instance until {@link #graphicsStateChanged()} is
+ * called, which {@link PDFFilteringTextStripper} does around each operator
+ * not showing text. Thus, such a filter effectively is evaluated once per
+ * text showing operation instead of once per glyph.
+ * </p>
+ * <p>
+ * For each filter the number of evaluations and rejections (and, if enabled,
+ * the time spent in it) is counted, see {@link #getEntries()}.
+ * </p>
+ *
+ * @author mkl
+ */
+public class TextStripperFilterChain implements TextStripperFilter {
+    public interface GraphicsStateFilter {
+        public boolean accept(PDGraphicsState graphicsState);
+    }
+
+    /**
+     * A filter in the chain with its statistics.
+     */
+    public static class Entry {
+        Entry(String name, double cost, TextStripperFilter filter, GraphicsStateFilter graphicsStateFilter) {
+            this.name = name;
+            this.cost = cost;
+            this.filter = filter;
+            this.graphicsStateFilter = graphicsStateFilter;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getCost() {
+            return cost;
+        }
+
+        public boolean isGraphicsStateOnly() {
+            return graphicsStateFilter != null;
+        }
+
+        /**
+         * @return the number of glyphs this filter has been asked about,
+         * including those answered from a cached decision.
+         */
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        /**
+         * @return the number of glyphs answered from a cached graphics state decision.
+         */
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        public long getRejections() {
+            return rejections;
+        }
+
+        /**
+         * @return the time spent in the filter in nanoseconds if timing is enabled.
+         */
+        public long getNanoTime() {
+            return nanoTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (cost %s): %d evaluations, %d cache hits, %d rejections, %.3f ms",
+                    name, cost, evaluations, cacheHits, rejections, nanoTime / 1000000.0);
+        }
+
+        boolean accept(TextPosition text, PDGraphicsState graphicsState, boolean timing) {
+            evaluations++;
+            boolean accepted;
+            if (graphicsStateFilter != null && graphicsState == cachedGraphicsState) {
+                cacheHits++;
+                accepted = cachedDecision;
+            } else {
+                long start = timing ? System.nanoTime() : 0;
+                if (graphicsStateFilter != null) {
+                    accepted = graphicsStateFilter.accept(graphicsState);
+                    cachedGraphicsState = graphicsState;
+                    cachedDecision = accepted;
+                } else {
+                    accepted = filter.accept(text, graphicsState);
+                }
+                if (timing)
+                    nanoTime += System.nanoTime() - start;
+            }
+            if (!accepted)
+                rejections++;
+            return accepted;
+        }
+
+        void graphicsStateChanged() {
+            cachedGraphicsState = null;
+            if (filter != null)
+                filter.graphicsStateChanged();
+        }
+
+        final String name;
+        final double cost;
+        final TextStripperFilter filter;
+        final GraphicsStateFilter graphicsStateFilter;
+        PDGraphicsState cachedGraphicsState = null;
+        boolean cachedDecision;
+        long evaluations = 0;
+        long cacheHits = 0;
+        long rejections = 0;
+        long nanoTime = 0;
+    }
+
+    public TextStripperFilterChain add(String name, TextStripperFilter filter, double cost) {
+        return add(new Entry(name, cost, filter, null));
+    }
+
+    public TextStripperFilterChain addGraphicsStateFilter(String name, GraphicsStateFilter filter, double cost) {
+        return add(new Entry(name, cost, null, filter));
+    }
+
+    /**
+     * @return the filters in evaluation order with their statistics.
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Whether the time spent in each filter is measured; by default it is not,
+     * as measuring costs about as much as a cheap filter.
+     */
+    public void setTiming(boolean timing) {
+        this.timing = timing;
+    }
+
+    public boolean isTiming() {
+        return timing;
+    }
+
+    public void resetStatistics() {
+        for (Entry entry : entries) {
+            entry.evaluations = 0;
+            entry.cacheHits = 0;
+            entry.rejections = 0;
+            entry.nanoTime = 0;
+        }
+    }
+
+    @Override
+    public boolean accept(TextPosition text, PDGraphicsState graphicsState) {
+        for (Entry entry : entries) {
+            if (!entry.accept(text, graphicsState, timing))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void graphicsStateChanged() {
+        for (Entry entry : entries)
+            entry.graphicsStateChanged();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Entry entry : entries)
+            builder.append(entry).append('\n');
+        return builder.toString();
+    }
+
+    //
+    // helpers
+    //
+    /**
+     * Inserts the entry after all entries of lower or equal cost.
+     */
+    TextStripperFilterChain add(Entry entry) {
+        int index = entries.size();
+        while (index > 0 && entries.get(index - 1).cost > entry.cost)
+            index--;
+        entries.add(index, entry);
+        return this;
+    }
+
+    final List<Entry> entries = new ArrayList<>();
+    boolean timing = false;
+}
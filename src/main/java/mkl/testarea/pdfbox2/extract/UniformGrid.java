@@ -0,0 +1,117 @@
+package mkl.testarea.pdfbox2.extract;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ * A uniform grid of cells over a bounded area, each holding the values
+ * registered for it, used by spatial indexes to only look at the values
+ * near a given point or area. Coordinates beyond the grid bounds are
+ * mapped to the nearest border cells. Cells are only allocated when a
+ * value is registered in them.
+ * </p>
+ * <p>
+ * How values are registered, e.g. in all cells their bounds overlap or
+ * only in the cells of some characteristic points, and how lookup results
+ * are filtered is up to the index using the grid.
+ * </p>
+ *
+ * @author mkl
+ */
+class UniformGrid<T> {
+    UniformGrid(Rectangle2D bounds, int columns, int rows) {
+        this.minX = bounds.getMinX();
+        this.minY = bounds.getMinY();
+        this.columns = columns;
+        this.rows = rows;
+        this.cellWidth = Math.max(bounds.getWidth() / columns, Double.MIN_NORMAL);
+        this.cellHeight = Math.max(bounds.getHeight() / rows, Double.MIN_NORMAL);
+        @SuppressWarnings("unchecked")
+        List<T>[] cells = (List<T>[]) new List<?>[columns * rows];
+        this.cells = cells;
+    }
+
+    /**
+     * Registers the value in all cells overlapping the given area.
+     */
+    void add(T value, Rectangle2D area) {
+        int column0 = column(area.getMinX()), column1 = column(area.getMaxX());
+        int row0 = row(area.getMinY()), row1 = row(area.getMaxY());
+        for (int row = row0; row <= row1; row++) {
+            for (int column = column0; column <= column1; column++)
+                addToCell(row * columns + column, value);
+        }
+    }
+
+    /**
+     * Unregisters the value from all cells overlapping the given area, which
+     * must be the area it has been registered with.
+     */
+    void remove(T value, Rectangle2D area) {
+        int column0 = column(area.getMinX()), column1 = column(area.getMaxX());
+        int row0 = row(area.getMinY()), row1 = row(area.getMaxY());
+        for (int row = row0; row <= row1; row++) {
+            for (int column = column0; column <= column1; column++) {
+                List<T> cell = cells[row * columns + column];
+                if (cell != null)
+                    cell.remove(value);
+            }
+        }
+    }
+
+    void addToCell(int index, T value) {
+        if (cells[index] == null)
+            cells[index] = new ArrayList<>();
+        cells[index].add(value);
+    }
+
+    /**
+     * @return the values registered in the cell of the given point, in
+     * registration order, or <code>null</code> if there are none.
+     */
+    List<T> getCell(double x, double y) {
+        return cells[cellIndex(x, y)];
+    }
+
+    /**
+     * Calls the action for each value registered in a cell overlapping the
+     * given area; values registered in multiple of these cells are passed
+     * multiple times.
+     */
+    void forEachInArea(Rectangle2D area, Consumer<T> action) {
+        int column0 = column(area.getMinX()), column1 = column(area.getMaxX());
+        int row0 = row(area.getMinY()), row1 = row(area.getMaxY());
+        for (int row = row0; row <= row1; row++) {
+            for (int column = column0; column <= column1; column++) {
+                List<T> cell = cells[row * columns + column];
+                if (cell != null)
+                    cell.forEach(action);
+            }
+        }
+    }
+
+    int cellIndex(double x, double y) {
+        return row(y) * columns + column(x);
+    }
+
+    int column(double x) {
+        int column = (int) Math.floor((x - minX) / cellWidth);
+        return column < 0 ? 0 : column >= columns ? columns - 1 : column;
+    }
+
+    int row(double y) {
+        int row = (int) Math.floor((y - minY) / cellHeight);
+        return row < 0 ? 0 : row >= rows ? rows - 1 : row;
+    }
+
+    final double minX;
+    final double minY;
+    final double cellWidth;
+    final double cellHeight;
+    final int columns;
+    final int rows;
+    final List<T>[] cells;
+}
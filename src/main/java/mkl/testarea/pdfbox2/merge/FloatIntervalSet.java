@@ -0,0 +1,165 @@
+package mkl.testarea.pdfbox2.merge;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+import mkl.testarea.pdfbox2.util.SortableFloats;
+
+/**
+ * <p>
+ * This class represents a set of closed float intervals as a sorted
+ * sequence of flips, i.e. of alternating interval starts and ends,
+ * backed by a primitive <code>float[]</code>.
+ * </p>
+ * <p>
+ * Intervals can be added one at a time using {@link #addInterval(float, float)},
+ * which locates the affected flips by binary search, or in a batch using
+ * {@link #addPendingInterval(float, float)}; pending intervals are merged
+ * into the set in a single sort-and-sweep pass by {@link #normalize()}.
+ * In batch mode touching intervals are always coalesced while the single
+ * interval mode keeps the order dependent behavior of the original
+ * {@link PageVerticalAnalyzer} implementation.
+ * </p>
+ * <p>
+ * For read access the class is an unmodifiable {@link java.util.List} of the
+ * flips; use {@link #getFlip(int)} to retrieve them without boxing. Pending
+ * intervals are not visible before {@link #normalize()} is called.
+ * </p>
+ *
+ * @author mkl
+ */
+public class FloatIntervalSet extends AbstractList<Float> implements RandomAccess {
+    /**
+     * Adds the closed interval between the given values to the set.
+     */
+    public void addInterval(float from, float to) {
+        if (to < from) {
+            float temp = to;
+            to = from;
+            from = temp;
+        }
+
+        int i = lowerBound(from, 0);
+        int j = lowerBound(to, i);
+        boolean fromOutsideInterval = i%2==0;
+        boolean toOutsideInterval = j%2==0;
+
+        int inserted = (fromOutsideInterval ? 1 : 0) + (toOutsideInterval ? 1 : 0);
+        int newSize = size - (j - i) + inserted;
+        ensureCapacity(newSize);
+        System.arraycopy(flips, j, flips, i + inserted, size - j);
+        if (fromOutsideInterval)
+            flips[i++] = from;
+        if (toOutsideInterval)
+            flips[i] = to;
+        size = newSize;
+        modCount++;
+    }
+
+    /**
+     * Registers the closed interval between the given values to be added
+     * to the set by the next call of {@link #normalize()}.
+     */
+    public void addPendingInterval(float from, float to) {
+        if (pendingSize + 2 > pending.length)
+            pending = Arrays.copyOf(pending, Math.max(16, 2 * pending.length));
+        if (to < from) {
+            pending[pendingSize++] = to;
+            pending[pendingSize++] = from;
+        } else {
+            pending[pendingSize++] = from;
+            pending[pendingSize++] = to;
+        }
+    }
+
+    /**
+     * Merges all pending intervals into the set: all intervals are sorted
+     * by their start and then coalesced in a single linear pass.
+     */
+    public void normalize() {
+        if (pendingSize == 0)
+            return;
+
+        int count = (size + pendingSize) / 2;
+        float[] intervals = new float[2 * count];
+        System.arraycopy(flips, 0, intervals, 0, size);
+        System.arraycopy(pending, 0, intervals, size, pendingSize);
+        pendingSize = 0;
+
+        // sort interval indices by interval start; the sortable int image of the
+        // start goes into the upper half of a long, the index into the lower half
+        long[] order = new long[count];
+        for (int k = 0; k < count; k++)
+            order[k] = ((long) SortableFloats.sortableBits(intervals[2 * k]) << 32) | k;
+        Arrays.sort(order);
+
+        ensureCapacity(2 * count);
+        size = 0;
+        for (long entry : order) {
+            int k = (int) entry;
+            float from = intervals[2 * k];
+            float to = intervals[2 * k + 1];
+            if (size > 0 && from <= flips[size - 1]) {
+                if (to > flips[size - 1])
+                    flips[size - 1] = to;
+            } else {
+                flips[size++] = from;
+                flips[size++] = to;
+            }
+        }
+        modCount++;
+    }
+
+    /**
+     * Removes all intervals, including pending ones, keeping the allocated buffers.
+     */
+    @Override
+    public void clear() {
+        size = 0;
+        pendingSize = 0;
+        modCount++;
+    }
+
+    public float getFlip(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return flips[index];
+    }
+
+    public float[] toFloatArray() {
+        return Arrays.copyOf(flips, size);
+    }
+
+    @Override
+    public Float get(int index) {
+        return getFlip(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    int lowerBound(float value, int fromIndex) {
+        int low = fromIndex, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (flips[mid] < value)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity > flips.length)
+            flips = Arrays.copyOf(flips, Math.max(capacity, 2 * flips.length));
+    }
+
+    float[] flips = new float[16];
+    int size = 0;
+    float[] pending = new float[16];
+    int pendingSize = 0;
+}
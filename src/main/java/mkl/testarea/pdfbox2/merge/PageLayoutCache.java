@@ -0,0 +1,244 @@
+package mkl.testarea.pdfbox2.merge;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+/**
+ * <p>
+ * This cache stores page analysis results of the dense merge tools,
+ * {@link PdfDenseMergeTool} and {@link PdfVeryDenseMergeTool}, to allow
+ * repeatedly merged pages like cover sheets to skip content stream parsing.
+ * </p>
+ * <p>
+ * Entries are keyed by a digest of the page content streams, its (possibly
+ * inherited) resources, and its crop box, cf. {@link #digest(PDPage)}. They
+ * are held in an in-memory LRU tier and, if a cache directory is given, also
+ * in files in that directory which survive the cache instance.
+ * </p>
+ * <p>
+ * Instances are thread safe and may be shared by multiple merge tools and
+ * by the parallel analysis of {@link ParallelPageAnalyzer}.
+ * </p>
+ *
+ * @author mkl
+ */
+public class PageLayoutCache {
+    public PageLayoutCache(int maxMemoryEntries)
+    {
+        this(maxMemoryEntries, null);
+    }
+
+    public PageLayoutCache(int maxMemoryEntries, File directory)
+    {
+        this.directory = directory;
+        this.memory = new LinkedHashMap<String, double[]>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, double[]> eldest) {
+                return size() > maxMemoryEntries;
+            }
+        };
+        if (directory != null)
+            directory.mkdirs();
+    }
+
+    /**
+     * Returns the cached analysis result of the given kind for the page
+     * with the given digest, or <code>null</code> if there is none.
+     */
+    public double[] get(String kind, String digest) throws IOException
+    {
+        String key = kind + '-' + digest;
+        synchronized (memory)
+        {
+            double[] values = memory.get(key);
+            if (values != null)
+                return values;
+        }
+        if (directory == null)
+            return null;
+
+        File file = new File(directory, key);
+        if (!file.isFile())
+            return null;
+        double[] values;
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file)))
+        {
+            values = new double[input.readInt()];
+            for (int i = 0; i < values.length; i++)
+                values[i] = input.readDouble();
+        }
+        synchronized (memory)
+        {
+            memory.put(key, values);
+        }
+        return values;
+    }
+
+    /**
+     * Stores the analysis result of the given kind for the page with the
+     * given digest. The array must not be changed afterwards.
+     */
+    public void put(String kind, String digest, double[] values) throws IOException
+    {
+        String key = kind + '-' + digest;
+        synchronized (memory)
+        {
+            memory.put(key, values);
+        }
+        if (directory == null)
+            return;
+
+        File temp = File.createTempFile(key, ".tmp", directory);
+        try (DataOutputStream output = new DataOutputStream(new FileOutputStream(temp)))
+        {
+            output.writeInt(values.length);
+            for (double value : values)
+                output.writeDouble(value);
+        }
+        Files.move(temp.toPath(), new File(directory, key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Calculates a digest of everything the page analysis depends on: the
+     * page content streams, its resources including all referenced streams
+     * (fonts, form XObjects, ...), and its crop box. Streams are hashed in
+     * their raw, i.e. not decoded, form.
+     */
+    public static String digest(PDPage page) throws IOException
+    {
+        MessageDigest messageDigest;
+        try
+        {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IOException("SHA-256 not available", e);
+        }
+        Map<COSBase, Integer> visited = new IdentityHashMap<>();
+        update(messageDigest, page.getCOSObject().getDictionaryObject(COSName.CONTENTS), visited);
+        PDResources resources = page.getResources();
+        if (resources != null)
+            update(messageDigest, resources.getCOSObject(), visited);
+        else
+            update(messageDigest, "NoResources");
+        PDRectangle cropBox = page.getCropBox();
+        update(messageDigest, String.format("C%s %s %s %s", cropBox.getLowerLeftX(), cropBox.getLowerLeftY(), cropBox.getUpperRightX(), cropBox.getUpperRightY()));
+
+        StringBuilder builder = new StringBuilder();
+        for (byte b : messageDigest.digest())
+            builder.append(String.format("%02x", b));
+        return builder.toString();
+    }
+
+    static void update(MessageDigest messageDigest, COSBase object, Map<COSBase, Integer> visited) throws IOException
+    {
+        if (object instanceof COSObject)
+            object = ((COSObject) object).getObject();
+
+        if (object == null)
+        {
+            update(messageDigest, "0");
+            return;
+        }
+        if (object instanceof COSDictionary)
+        {
+            Integer index = visited.get(object);
+            if (index != null)
+            {
+                update(messageDigest, "R" + index);
+                return;
+            }
+            visited.put(object, visited.size());
+
+            COSDictionary dictionary = (COSDictionary) object;
+            List<COSName> keys = new ArrayList<>(dictionary.keySet());
+            keys.sort(null);
+            update(messageDigest, "D" + keys.size());
+            for (COSName key : keys)
+            {
+                update(messageDigest, key, visited);
+                update(messageDigest, dictionary.getItem(key), visited);
+            }
+            if (object instanceof COSStream)
+            {
+                update(messageDigest, "S");
+                try (InputStream data = ((COSStream) object).createRawInputStream())
+                {
+                    byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = data.read(buffer)) > 0)
+                        messageDigest.update(buffer, 0, read);
+                }
+            }
+        }
+        else if (object instanceof COSArray)
+        {
+            Integer index = visited.get(object);
+            if (index != null)
+            {
+                update(messageDigest, "R" + index);
+                return;
+            }
+            visited.put(object, visited.size());
+
+            COSArray array = (COSArray) object;
+            update(messageDigest, "A" + array.size());
+            for (int i = 0; i < array.size(); i++)
+                update(messageDigest, array.get(i), visited);
+        }
+        else if (object instanceof COSName)
+            update(messageDigest, "N" + ((COSName) object).getName());
+        else if (object instanceof COSString)
+        {
+            byte[] bytes = ((COSString) object).getBytes();
+            update(messageDigest, "T" + bytes.length);
+            messageDigest.update(bytes);
+        }
+        else if (object instanceof COSNumber)
+            update(messageDigest, "F" + ((COSNumber) object).floatValue());
+        else if (object instanceof COSBoolean)
+            update(messageDigest, "B" + ((COSBoolean) object).getValue());
+        else
+            update(messageDigest, object.getClass().getSimpleName());
+    }
+
+    static void update(MessageDigest messageDigest, String token)
+    {
+        messageDigest.update(token.getBytes(StandardCharsets.UTF_8));
+        messageDigest.update((byte) 0);
+    }
+
+    final Map<String, double[]> memory;
+    final File directory;
+}
@@ -0,0 +1,64 @@
+package mkl.testarea.pdfbox2.merge;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import mkl.testarea.pdfbox2.util.PageRangeExecution;
+
+/**
+ * <p>
+ * This helper runs the page analysis phase of the dense merge tools,
+ * {@link PdfDenseMergeTool} and {@link PdfVeryDenseMergeTool}, in
+ * parallel on a given {@link ExecutorService}.
+ * </p>
+ * <p>
+ * As PDFBox documents are not thread safe, the unit of parallelism
+ * is the input document: the pages of one document are analyzed
+ * sequentially in a single task while different documents are
+ * analyzed concurrently. A document occurring multiple times in
+ * the inputs is analyzed only once.
+ * </p>
+ *
+ * @author mkl
+ */
+class ParallelPageAnalyzer {
+    interface PageAnalysis<T> {
+        T analyze(PDPage page) throws IOException;
+    }
+
+    static <T> Map<PDDocument, List<T>> analyze(Iterable<PDDocument> inputs, PageAnalysis<T> analysis, ExecutorService executor) throws IOException
+    {
+        Map<PDDocument, Future<List<T>>> futures = new IdentityHashMap<>();
+        for (PDDocument input : inputs)
+        {
+            if (!futures.containsKey(input))
+            {
+                futures.put(input, executor.submit(() -> {
+                    List<T> layouts = new ArrayList<>(input.getNumberOfPages());
+                    for (PDPage page : input.getPages())
+                    {
+                        layouts.add(analysis.analyze(page));
+                    }
+                    return layouts;
+                }));
+            }
+        }
+
+        List<PDDocument> documents = new ArrayList<>(futures.keySet());
+        List<List<T>> layouts = PageRangeExecution.getAll(new ArrayList<>(futures.values()), "analyzing pages");
+        Map<PDDocument, List<T>> results = new IdentityHashMap<>();
+        for (int i = 0; i < documents.size(); i++)
+        {
+            results.put(documents.get(i), layouts.get(i));
+        }
+        return results;
+    }
+}
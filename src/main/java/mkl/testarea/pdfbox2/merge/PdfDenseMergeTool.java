@@ -3,7 +3,11 @@ package mkl.testarea.pdfbox2.merge;
 import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.multipdf.LayerUtility;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -22,6 +26,21 @@ import mkl.testarea.pdfbox2.extract.BoundingBoxFinder;
  * This class allows a dense merging of multiple input PDFs.
  * It is a port of the iText 5 class <code>mkl.testarea.itext5.merge.PdfDenseMergeTool</code>.
  * </p>
+ * <p>
+ * For large numbers of inputs use {@link #merge(OutputStream, Iterable, MemoryUsageSetting)}
+ * with {@link DocumentSource} instances: each source is opened only when it is merged
+ * and closed right after its pages have been placed, and the target document can keep
+ * its stream data in a scratch file, so the memory footprint does not grow with the
+ * number of inputs.
+ * </p>
+ * <p>
+ * Alternatively use {@link #merge(OutputStream, Iterable, ExecutorService)} to
+ * analyze the input pages in parallel before placing them sequentially.
+ * </p>
+ * <p>
+ * If the same pages are merged again and again, set a {@link PageLayoutCache}
+ * to skip their repeated analysis.
+ * </p>
  * 
  * @author mkl
  */
@@ -34,15 +53,90 @@ public class PdfDenseMergeTool {
         this.gap = gap;
     }
 
+    /**
+     * Sets a cache for the page analysis results; <code>null</code> disables caching.
+     */
+    public void setLayoutCache(PageLayoutCache layoutCache)
+    {
+        this.layoutCache = layoutCache;
+    }
+
     public void merge(OutputStream outputStream, Iterable<PDDocument> inputs) throws IOException
     {
-        try
+        place(outputStream, inputs, MemoryUsageSetting.setupMainMemoryOnly(), this::merge);
+    }
+
+    /**
+     * Two phase variant of {@link #merge(OutputStream, Iterable)}: First the
+     * bounding boxes of all input pages are determined in parallel using the
+     * given executor, cf. {@link ParallelPageAnalyzer}, then the pages are
+     * placed sequentially.
+     */
+    public void merge(OutputStream outputStream, Iterable<PDDocument> inputs, ExecutorService executor) throws IOException
+    {
+        Map<PDDocument, List<PageLayout>> layouts = ParallelPageAnalyzer.analyze(inputs, this::analyze, executor);
+        place(outputStream, inputs, MemoryUsageSetting.setupMainMemoryOnly(), input ->
+        {
+            LayerUtility layerUtility = new LayerUtility(document);
+            List<PageLayout> inputLayouts = layouts.get(input);
+            int pageIndex = 0;
+            for (PDPage page : input.getPages())
+            {
+                place(layerUtility, input, page, inputLayouts.get(pageIndex++));
+            }
+        });
+    }
+
+    /**
+     * Streaming variant of {@link #merge(OutputStream, Iterable)}: The inputs are
+     * opened one at a time and closed as soon as all their pages have been placed.
+     * This is possible because {@link LayerUtility#importPageAsForm(PDDocument, PDPage)}
+     * deep-copies the page content and resources into the target document. Using a
+     * {@link MemoryUsageSetting} with temporary file usage also moves the copied
+     * stream data of finished pages out of the heap.
+     */
+    public void merge(OutputStream outputStream, Iterable<? extends DocumentSource> inputs, MemoryUsageSetting memoryUsageSetting) throws IOException
+    {
+        place(outputStream, inputs, memoryUsageSetting, source ->
         {
-            openDocument();
-            for (PDDocument input: inputs)
+            try (PDDocument input = source.open())
             {
                 merge(input);
             }
+        });
+    }
+
+    /**
+     * Lazy provider of an input document for
+     * {@link PdfDenseMergeTool#merge(OutputStream, Iterable, MemoryUsageSetting)}.
+     * Each call shall return a newly opened document; it is closed by the tool.
+     */
+    public interface DocumentSource
+    {
+        PDDocument open() throws IOException;
+    }
+
+    /**
+     * Places the pages of a single input, see {@link PdfDenseMergeTool#place(OutputStream, Iterable, MemoryUsageSetting, InputPlacement)}.
+     */
+    interface InputPlacement<T>
+    {
+        void place(T input) throws IOException;
+    }
+
+    /**
+     * Creates the target document, places the given inputs in it one after
+     * the other, and saves it to the given output stream.
+     */
+    private <T> void place(OutputStream outputStream, Iterable<T> inputs, MemoryUsageSetting memoryUsageSetting, InputPlacement<? super T> placement) throws IOException
+    {
+        try
+        {
+            openDocument(memoryUsageSetting);
+            for (T input : inputs)
+            {
+                placement.place(input);
+            }
             if (currentContents != null) {
                 currentContents.close();
                 currentContents = null;
@@ -53,12 +147,16 @@ public class PdfDenseMergeTool {
         {
             closeDocument();
         }
-        
     }
 
     void openDocument() throws IOException
     {
-        document = new PDDocument();
+        openDocument(MemoryUsageSetting.setupMainMemoryOnly());
+    }
+
+    void openDocument(MemoryUsageSetting memoryUsageSetting) throws IOException
+    {
+        document = new PDDocument(memoryUsageSetting);
         newPage();
     }
 
@@ -93,19 +191,61 @@ public class PdfDenseMergeTool {
 
     void merge(PDDocument input) throws IOException
     {
+        LayerUtility layerUtility = new LayerUtility(document);
         for (PDPage page : input.getPages())
         {
-            merge(input, page);
+            merge(layerUtility, input, page);
         }
     }
 
     void merge(PDDocument sourceDoc, PDPage page) throws IOException
     {
-        PDRectangle pageSizeToImport = page.getCropBox();
+        merge(new LayerUtility(document), sourceDoc, page);
+    }
+
+    /**
+     * The {@link LayerUtility} is shared by all pages of a source document so that
+     * resources used by multiple of those pages are copied only once. It must not
+     * be kept beyond the source document as it references the source objects.
+     */
+    void merge(LayerUtility layerUtility, PDDocument sourceDoc, PDPage page) throws IOException
+    {
+        place(layerUtility, sourceDoc, page, analyze(page));
+    }
+
+    /**
+     * Analysis phase: determines the layout of the given page. This does not
+     * depend on the state of the merge tool and, therefore, can be executed
+     * concurrently for pages of different documents. If a layout cache is set,
+     * it is consulted first.
+     */
+    PageLayout analyze(PDPage page) throws IOException
+    {
+        PageLayoutCache cache = layoutCache;
+        String digest = null;
+        if (cache != null)
+        {
+            digest = PageLayoutCache.digest(page);
+            double[] values = cache.get(LAYOUT_CACHE_KIND, digest);
+            if (values != null)
+                return new PageLayout(page.getCropBox(), new Rectangle2D.Double(values[0], values[1], values[2], values[3]));
+        }
+
         BoundingBoxFinder boundingBoxFinder = new BoundingBoxFinder(page);
         boundingBoxFinder.processPage(page);
-        Rectangle2D boundingBoxToImport = boundingBoxFinder.getBoundingBox();
-        double heightToImport = boundingBoxToImport.getHeight();
+        Rectangle2D boundingBox = boundingBoxFinder.getBoundingBox();
+        if (cache != null && boundingBox != null)
+            cache.put(LAYOUT_CACHE_KIND, digest, new double[] {boundingBox.getX(), boundingBox.getY(), boundingBox.getWidth(), boundingBox.getHeight()});
+        return new PageLayout(page.getCropBox(), boundingBox);
+    }
+
+    /**
+     * Placement phase: draws the given page into the target document
+     * according to its previously determined layout.
+     */
+    void place(LayerUtility layerUtility, PDDocument sourceDoc, PDPage page, PageLayout layout) throws IOException
+    {
+        double heightToImport = layout.height;
         float maxHeight = pageSize.getHeight() - topMargin - bottomMargin;
         if (heightToImport > maxHeight)
         {
@@ -118,21 +258,40 @@ public class PdfDenseMergeTool {
         }
         yPosition -= heightToImport + gap;
 
-        LayerUtility layerUtility = new LayerUtility(document);
         PDFormXObject form = layerUtility.importPageAsForm(sourceDoc, page);
 
         currentContents.saveGraphicsState();
-        Matrix matrix = Matrix.getTranslateInstance(0, (float)(yPosition - (boundingBoxToImport.getMinY() - pageSizeToImport.getLowerLeftY())));
+        Matrix matrix = Matrix.getTranslateInstance(0, (float)(yPosition - (layout.minY - layout.lowerLeftY)));
         currentContents.transform(matrix);
         currentContents.drawForm(form);
         currentContents.restoreGraphicsState();
     }
 
+    /**
+     * Immutable result of the analysis phase for a single page.
+     */
+    static final class PageLayout
+    {
+        PageLayout(PDRectangle cropBox, Rectangle2D boundingBox)
+        {
+            this.lowerLeftY = cropBox.getLowerLeftY();
+            this.minY = boundingBox.getMinY();
+            this.height = boundingBox.getHeight();
+        }
+
+        final float lowerLeftY;
+        final double minY;
+        final double height;
+    }
+
     PDDocument document = null;
     PDPage currentPage = null;
     PDPageContentStream currentContents = null;
     float yPosition = 0; 
 
+    PageLayoutCache layoutCache = null;
+    final static String LAYOUT_CACHE_KIND = "bbox";
+
     final PDRectangle pageSize;
     final float topMargin;
     final float bottomMargin;
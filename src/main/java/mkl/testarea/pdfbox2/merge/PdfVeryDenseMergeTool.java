@@ -3,6 +3,8 @@ package mkl.testarea.pdfbox2.merge;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.pdfbox.multipdf.LayerUtility;
 import org.apache.pdfbox.pdmodel.PDDocument;
@@ -20,6 +22,14 @@ import org.apache.pdfbox.util.Matrix;
  * This class allows a very dense merging of multiple input PDFs.
  * It is a port of the iText 5 class <code>mkl.testarea.itext5.merge.PdfVeryDenseMergeTool</code>.
  * </p>
+ * <p>
+ * Use {@link #merge(OutputStream, Iterable, ExecutorService)} to analyze the
+ * input pages in parallel before placing them sequentially.
+ * </p>
+ * <p>
+ * If the same pages are merged again and again, set a {@link PageLayoutCache}
+ * to skip their repeated analysis.
+ * </p>
  * 
  * @author mkl
  */
@@ -32,14 +42,59 @@ public class PdfVeryDenseMergeTool {
         this.gap = gap;
     }
 
+    /**
+     * Sets a cache for the page analysis results; <code>null</code> disables caching.
+     */
+    public void setLayoutCache(PageLayoutCache layoutCache)
+    {
+        this.layoutCache = layoutCache;
+    }
+
     public void merge(OutputStream outputStream, Iterable<PDDocument> inputs) throws IOException
+    {
+        place(outputStream, inputs, this::merge);
+    }
+
+    /**
+     * Two phase variant of {@link #merge(OutputStream, Iterable)}: First the
+     * vertical flips of all input pages are determined in parallel using the
+     * given executor, cf. {@link ParallelPageAnalyzer}, then the pages are
+     * placed sequentially.
+     */
+    public void merge(OutputStream outputStream, Iterable<PDDocument> inputs, ExecutorService executor) throws IOException
+    {
+        Map<PDDocument, List<PageLayout>> layouts = ParallelPageAnalyzer.analyze(inputs, this::analyze, executor);
+        place(outputStream, inputs, input ->
+        {
+            List<PageLayout> inputLayouts = layouts.get(input);
+            int pageIndex = 0;
+            for (PDPage page : input.getPages())
+            {
+                place(input, page, inputLayouts.get(pageIndex++));
+            }
+        });
+    }
+
+    /**
+     * Places the pages of a single input, see {@link PdfVeryDenseMergeTool#place(OutputStream, Iterable, InputPlacement)}.
+     */
+    interface InputPlacement
+    {
+        void place(PDDocument input) throws IOException;
+    }
+
+    /**
+     * Creates the target document, places the given inputs in it one after
+     * the other, and saves it to the given output stream.
+     */
+    private void place(OutputStream outputStream, Iterable<PDDocument> inputs, InputPlacement placement) throws IOException
     {
         try
         {
             openDocument();
-            for (PDDocument input: inputs)
+            for (PDDocument input : inputs)
             {
-                merge(input);
+                placement.place(input);
             }
             if (currentContents != null) {
                 currentContents.close();
@@ -51,7 +106,6 @@ public class PdfVeryDenseMergeTool {
         {
             closeDocument();
         }
-        
     }
 
     void openDocument() throws IOException
@@ -99,18 +153,59 @@ public class PdfVeryDenseMergeTool {
 
     void merge(PDDocument sourceDoc, PDPage page) throws IOException
     {
-        PDRectangle pageSizeToImport = page.getCropBox();
+        place(sourceDoc, page, analyze(page));
+    }
+
+    /**
+     * Analysis phase: determines the layout of the given page. This does not
+     * depend on the state of the merge tool and, therefore, can be executed
+     * concurrently for pages of different documents. If a layout cache is set,
+     * it is consulted first.
+     */
+    PageLayout analyze(PDPage page) throws IOException
+    {
+        PageLayoutCache cache = layoutCache;
+        String digest = null;
+        if (cache != null)
+        {
+            digest = PageLayoutCache.digest(page);
+            double[] values = cache.get(LAYOUT_CACHE_KIND, digest);
+            if (values != null)
+            {
+                float[] verticalFlips = new float[values.length];
+                for (int i = 0; i < values.length; i++)
+                    verticalFlips[i] = (float) values[i];
+                return new PageLayout(page.getCropBox(), verticalFlips);
+            }
+        }
 
         PageVerticalAnalyzer analyzer = new PageVerticalAnalyzer(page);
         analyzer.processPage(page);
-        List<Float> verticalFlips = analyzer.getVerticalFlips();
-        if (verticalFlips.size() < 2)
+        PageLayout layout = new PageLayout(page.getCropBox(), analyzer.getVerticalFlips());
+        if (cache != null)
+        {
+            double[] values = new double[layout.verticalFlips.length];
+            for (int i = 0; i < values.length; i++)
+                values[i] = layout.verticalFlips[i];
+            cache.put(LAYOUT_CACHE_KIND, digest, values);
+        }
+        return layout;
+    }
+
+    /**
+     * Placement phase: draws the given page into the target document
+     * according to its previously determined layout.
+     */
+    void place(PDDocument sourceDoc, PDPage page, PageLayout layout) throws IOException
+    {
+        float[] verticalFlips = layout.verticalFlips;
+        if (verticalFlips.length < 2)
             return;
 
         LayerUtility layerUtility = new LayerUtility(document);
         PDFormXObject form = layerUtility.importPageAsForm(sourceDoc, page);
 
-        int startFlip = verticalFlips.size() - 1;
+        int startFlip = verticalFlips.length - 1;
         boolean first = true;
         while (startFlip > 0)
         {
@@ -119,16 +214,16 @@ public class PdfVeryDenseMergeTool {
 
             float freeSpace = yPosition - pageSize.getLowerLeftY() - bottomMargin;
             int endFlip = startFlip + 1;
-            while ((endFlip > 1) && (verticalFlips.get(startFlip) - verticalFlips.get(endFlip - 2) < freeSpace))
+            while ((endFlip > 1) && (verticalFlips[startFlip] - verticalFlips[endFlip - 2] < freeSpace))
                 endFlip -=2;
             if (endFlip < startFlip)
             {
-                float height = verticalFlips.get(startFlip) - verticalFlips.get(endFlip);
+                float height = verticalFlips[startFlip] - verticalFlips[endFlip];
 
                 currentContents.saveGraphicsState();
-                currentContents.addRect(0, yPosition - height, pageSizeToImport.getWidth(), height);
+                currentContents.addRect(0, yPosition - height, layout.width, height);
                 currentContents.clip();
-                Matrix matrix = Matrix.getTranslateInstance(0, (float)(yPosition - (verticalFlips.get(startFlip) - pageSizeToImport.getLowerLeftY())));
+                Matrix matrix = Matrix.getTranslateInstance(0, yPosition - (verticalFlips[startFlip] - layout.lowerLeftY));
                 currentContents.transform(matrix);
                 currentContents.drawForm(form);
                 currentContents.restoreGraphicsState();
@@ -142,11 +237,36 @@ public class PdfVeryDenseMergeTool {
         }
     }
 
+    /**
+     * Immutable result of the analysis phase for a single page.
+     */
+    static final class PageLayout
+    {
+        PageLayout(PDRectangle cropBox, FloatIntervalSet verticalFlips)
+        {
+            this(cropBox, verticalFlips.toFloatArray());
+        }
+
+        PageLayout(PDRectangle cropBox, float[] verticalFlips)
+        {
+            this.lowerLeftY = cropBox.getLowerLeftY();
+            this.width = cropBox.getWidth();
+            this.verticalFlips = verticalFlips;
+        }
+
+        final float lowerLeftY;
+        final float width;
+        private final float[] verticalFlips;
+    }
+
     PDDocument document = null;
     PDPage currentPage = null;
     PDPageContentStream currentContents = null;
     float yPosition = 0; 
 
+    PageLayoutCache layoutCache = null;
+    final static String LAYOUT_CACHE_KIND = "flips";
+
     final PDRectangle pageSize;
     final float topMargin;
     final float bottomMargin;
@@ -0,0 +1,137 @@
+package mkl.testarea.pdfbox2.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+/**
+ * <p>
+ * This class is the base of tools which split a sequence of pages into
+ * ranges and process them in parallel on a thread pool of their own,
+ * getting the results in page order. As {@link PDDocument} instances are
+ * not thread safe, such tools usually load a copy of the document per
+ * range using a {@link DocumentLoader}.
+ * </p>
+ * <p>
+ * It also offers helpers for tools running tasks on a given executor.
+ * </p>
+ *
+ * @author mkl
+ */
+public class PageRangeExecution {
+    /**
+     * Loads a copy of the document to process.
+     */
+    public interface DocumentLoader {
+        public PDDocument load() throws IOException;
+    }
+
+    /**
+     * Processes a page range; start and end page are inclusive.
+     */
+    public interface RangeTask<R> {
+        public R process(int startPage, int endPage) throws IOException;
+    }
+
+    /**
+     * The number of worker threads, a positive number; by default the number of
+     * available processors.
+     */
+    public void setThreadCount(int threadCount) {
+        checkThreadCount(threadCount);
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * The number of pages per range; if not positive (the default), the pages
+     * are split into four ranges per thread to even out differing page costs
+     * without loading the document too often.
+     */
+    public void setPagesPerRange(int pagesPerRange) {
+        this.pagesPerRange = pagesPerRange;
+    }
+
+    public int getPagesPerRange() {
+        return pagesPerRange;
+    }
+
+    /**
+     * Processes the pages from <code>firstPage</code> to <code>lastPage</code>
+     * (inclusive) in ranges as configured. A single range is processed in the
+     * calling thread.
+     */
+    protected <R> List<R> run(int firstPage, int lastPage, RangeTask<R> task) throws IOException {
+        int pageCount = lastPage - firstPage + 1;
+        int rangeSize = pagesPerRange > 0 ? pagesPerRange : Math.max(1, (pageCount + 4 * threadCount - 1) / (4 * threadCount));
+        List<int[]> ranges = new ArrayList<>();
+        for (int startPage = firstPage; startPage <= lastPage; startPage += rangeSize)
+            ranges.add(new int[] {startPage, Math.min(lastPage, startPage + rangeSize - 1)});
+
+        if (ranges.size() <= 1) {
+            List<R> results = new ArrayList<>();
+            for (int[] range : ranges)
+                results.add(task.process(range[0], range[1]));
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threadCount, ranges.size()));
+        try {
+            List<Future<R>> futures = new ArrayList<>();
+            for (int[] range : ranges)
+                futures.add(executor.submit(() -> task.process(range[0], range[1])));
+            return getAll(futures, "parallel page range processing");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Waits for the given futures and returns their results in the same order.
+     * If a task fails, the other tasks are cancelled and its exception is
+     * rethrown, checked exceptions other than {@link IOException} wrapped in
+     * an {@link IOException}. The activity is used in the exception messages.
+     */
+    public static <R> List<R> getAll(List<? extends Future<? extends R>> futures, String activity) throws IOException {
+        List<R> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<? extends R> future : futures)
+                results.add(future.get());
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during " + activity + ".", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException("Failure during " + activity + ".", cause);
+        }
+        return results;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the given thread count is not positive.
+     */
+    public static void checkThreadCount(int threadCount) {
+        if (threadCount <= 0)
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+    }
+
+    int threadCount = Runtime.getRuntime().availableProcessors();
+    int pagesPerRange = 0;
+}
@@ -0,0 +1,20 @@
+package mkl.testarea.pdfbox2.util;
+
+/**
+ * <p>
+ * This class maps float values to int values with the same signed order,
+ * e.g. for sorting them together with an index as part of a long key
+ * with {@link java.util.Arrays#sort(long[])}.
+ * </p>
+ *
+ * @author mkl
+ */
+public class SortableFloats {
+    /**
+     * Maps float values to int values with the same signed order.
+     */
+    public static int sortableBits(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits < 0 ? bits ^ 0x7fffffff : bits;
+    }
+}
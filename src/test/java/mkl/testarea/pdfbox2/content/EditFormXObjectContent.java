@@ -3,20 +3,27 @@ package mkl.testarea.pdfbox2.content;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.pdfbox.contentstream.operator.Operator;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSFloat;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
 import org.apache.pdfbox.pdfwriter.ContentStreamWriter;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -78,4 +85,92 @@ public class EditFormXObjectContent {
         }
     }
 
+    /**
+     * <a href="https://stackoverflow.com/questions/77696598/how-to-adjust-operators-and-operands-from-xobjects-with-pdfbox">
+     * How to adjust Operators and Operands from XObjects with PDFBox
+     * </a>
+     * <p>
+     * This test replaces (some) fill color values in all form XObjects of the
+     * test document, also nested ones, sharing the set of edited forms among
+     * the editors of all pages, cf. {@link PdfContentStreamEditor#setEditedForms(java.util.Set)}.
+     * It checks that each form XObject has been inverted exactly once, even if
+     * used on multiple pages.
+     * </p>
+     */
+    @Test
+    public void testInvertColorsOnceHighPioneerFallNewsletterADApdf_2() throws IOException {
+        try (   InputStream resource = getClass().getResourceAsStream("HighPioneerFallNewsletterADApdf_2.pdf");
+                PDDocument document = PDDocument.load(resource)) {
+            Map<COSStream, List<Float>> originalValues = new IdentityHashMap<>();
+            for (PDPage page : document.getDocumentCatalog().getPages())
+                collectFillColorValues(page.getResources(), originalValues);
+
+            Set<COSStream> editedForms = PdfContentStreamEditor.createEditedForms();
+            for (PDPage page : document.getDocumentCatalog().getPages()) {
+                PdfContentStreamEditor editor = createColorInverter(document, page);
+                editor.setEditedForms(editedForms);
+                editor.setRecurseIntoForms(true);
+                editor.processFormXObjects(page);
+            }
+            document.save(new File(RESULT_FOLDER, "HighPioneerFallNewsletterADApdf_2-formColorsInvertedOnce.pdf"));
+
+            Assert.assertEquals("Number of edited forms", originalValues.size(), editedForms.size());
+            for (Map.Entry<COSStream, List<Float>> entry : originalValues.entrySet()) {
+                List<Float> values = fillColorValues(new PDFormXObject(entry.getKey()));
+                Assert.assertEquals(entry.getValue().size(), values.size());
+                for (int i = 0; i < values.size(); i++)
+                    Assert.assertEquals(1.0f - entry.getValue().get(i), values.get(i), 1e-4);
+            }
+        }
+    }
+
+    PdfContentStreamEditor createColorInverter(PDDocument document, PDPage page) {
+        return new PdfContentStreamEditor(document, page) {
+            @Override
+            protected void write(ContentStreamWriter contentStreamWriter, Operator operator, List<COSBase> operands) throws IOException {
+                if (RGB_FILL_COLOR_OPERATORS.contains(operator.getName())) {
+                    for (int i = 0; i < operands.size(); i++) {
+                        COSBase number = operands.get(i);
+                        if (number instanceof COSNumber) {
+                            operands.set(i, new COSFloat(1.0f - ((COSNumber)number).floatValue()));
+                        }
+                    }
+                }
+
+                super.write(contentStreamWriter, operator, operands);
+            }
+        };
+    }
+
+    static void collectFillColorValues(PDResources resources, Map<COSStream, List<Float>> values) throws IOException {
+        if (resources == null)
+            return;
+        for (COSName name : resources.getXObjectNames()) {
+            PDXObject xObject = resources.getXObject(name);
+            if (xObject instanceof PDFormXObject && !values.containsKey(xObject.getCOSObject())) {
+                PDFormXObject form = (PDFormXObject) xObject;
+                values.put(form.getCOSObject(), fillColorValues(form));
+                collectFillColorValues(form.getResources(), values);
+            }
+        }
+    }
+
+    static List<Float> fillColorValues(PDFormXObject form) throws IOException {
+        PDFStreamParser parser = new PDFStreamParser(form);
+        parser.parse();
+        List<Float> values = new ArrayList<>();
+        List<Float> numbers = new ArrayList<>();
+        for (Object token : parser.getTokens()) {
+            if (token instanceof COSNumber) {
+                numbers.add(((COSNumber)token).floatValue());
+            } else if (token instanceof Operator) {
+                if (RGB_FILL_COLOR_OPERATORS.contains(((Operator)token).getName()))
+                    values.addAll(numbers);
+                numbers.clear();
+            }
+        }
+        return values;
+    }
+
+    final static List<String> RGB_FILL_COLOR_OPERATORS = Arrays.asList("rg", "sc", "scn");
 }
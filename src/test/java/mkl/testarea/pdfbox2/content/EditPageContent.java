@@ -8,6 +8,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.pdfbox.contentstream.operator.Operator;
@@ -15,6 +16,7 @@ import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSFloat;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
 import org.apache.pdfbox.pdfwriter.ContentStreamWriter;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -22,6 +24,7 @@ import org.apache.pdfbox.pdmodel.common.PDStream;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.util.Matrix;
 import org.apache.pdfbox.util.Vector;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -106,6 +109,190 @@ public class EditPageContent {
         }
     }
 
+    /**
+     * <a href="http://stackoverflow.com/questions/38498431/how-to-remove-filtered-content-from-a-pdf-with-itext">
+     * How to remove filtered content from a PDF with iText
+     * </a>
+     * <br/>
+     * <a href="https://1drv.ms/b/s!AmNST-TRoPSemi2k0UnGFsjQM1Yt">
+     * document.pdf
+     * </a>
+     * <p>
+     * This test does the same as {@link #testRemoveBigTextDocument()} both with
+     * and without the pass-through mode of the {@link PdfContentStreamEditor}
+     * and checks that the resulting content streams parse to the same tokens.
+     * In pass-through mode, the unchanged operations are copied verbatim.
+     * </p>
+     */
+    @Test
+    public void testRemoveBigTextDocumentPassThrough() throws IOException {
+        try (   InputStream resource = getClass().getResourceAsStream("document.pdf");
+                PDDocument document = PDDocument.load(resource);
+                InputStream passThroughResource = getClass().getResourceAsStream("document.pdf");
+                PDDocument passThroughDocument = PDDocument.load(passThroughResource)) {
+            for (int i = 0; i < document.getNumberOfPages(); i++) {
+                PDPage page = document.getPage(i);
+                PDPage passThroughPage = passThroughDocument.getPage(i);
+                createBigTextRemover(document, page, false).processPage(page);
+                PdfContentStreamEditor passThroughEditor = createBigTextRemover(passThroughDocument, passThroughPage, false);
+                passThroughEditor.setPassThrough(true);
+                passThroughEditor.processPage(passThroughPage);
+
+                Assert.assertEquals("Content of page " + (i + 1), tokens(page), tokens(passThroughPage));
+                Assert.assertTrue("Operations copied verbatim on page " + (i + 1), passThroughEditor.getPassedThroughCount() > 0);
+                System.out.printf("Page %d: %d bytes serialized, %d bytes passed through\n", i + 1,
+                        page.getContents().readAllBytes().length, passThroughPage.getContents().readAllBytes().length);
+            }
+            passThroughDocument.save(new File(RESULT_FOLDER, "document-noBigText-passThrough.pdf"));
+        }
+    }
+
+    /**
+     * <a href="http://stackoverflow.com/questions/38498431/how-to-remove-filtered-content-from-a-pdf-with-itext">
+     * How to remove filtered content from a PDF with iText
+     * </a>
+     * <br/>
+     * <a href="https://1drv.ms/b/s!AmNST-TRoPSemi2k0UnGFsjQM1Yt">
+     * document.pdf
+     * </a>
+     * <p>
+     * This test does the same as {@link #testRemoveBigTextDocument()} both with
+     * all operators processed and with only the text showing operators (and their
+     * state dependencies) processed, cf. {@link PdfContentStreamEditor#getRequiredOperators()},
+     * and checks that the resulting content streams parse to the same tokens.
+     * </p>
+     */
+    @Test
+    public void testRemoveBigTextDocumentSelective() throws IOException {
+        try (   InputStream resource = getClass().getResourceAsStream("document.pdf");
+                PDDocument document = PDDocument.load(resource);
+                InputStream selectiveResource = getClass().getResourceAsStream("document.pdf");
+                PDDocument selectiveDocument = PDDocument.load(selectiveResource)) {
+            for (int i = 0; i < document.getNumberOfPages(); i++) {
+                PDPage page = document.getPage(i);
+                PDPage selectivePage = selectiveDocument.getPage(i);
+                createBigTextRemover(document, page, false).processPage(page);
+                PdfContentStreamEditor selectiveEditor = createBigTextRemover(selectiveDocument, selectivePage, true);
+                selectiveEditor.setPassThrough(true);
+                selectiveEditor.processPage(selectivePage);
+
+                Assert.assertEquals("Content of page " + (i + 1), tokens(page), tokens(selectivePage));
+            }
+            selectiveDocument.save(new File(RESULT_FOLDER, "document-noBigText-selective.pdf"));
+        }
+    }
+
+    /**
+     * <a href="http://stackoverflow.com/questions/38498431/how-to-remove-filtered-content-from-a-pdf-with-itext">
+     * How to remove filtered content from a PDF with iText
+     * </a>
+     * <br/>
+     * <a href="https://1drv.ms/b/s!AmNST-TRoPSemi2k0UnGFsjQM1Yt">
+     * document.pdf
+     * </a>
+     * <p>
+     * This test removes big text like {@link #testRemoveBigTextDocument()} and
+     * recolors black RGB fills like {@link #testReplaceRGBBlackGridShapesModified()}
+     * in a single parse using a {@link PdfContentStreamEditorPipeline} and checks
+     * that the result parses to the same tokens as applying both edits one after
+     * the other with separate editors.
+     * </p>
+     */
+    @Test
+    public void testRemoveBigTextRecolorDocumentPipeline() throws IOException {
+        float[] replacementColor = new float[] {.1f, .7f, .6f};
+        PdfContentStreamEditorPipeline.Stage recolorStage = (editor, next, operator, operands) -> {
+            if ("rg".equals(operator.getName()) && operands.size() == 3 && isBlack(operands)) {
+                for (int i = 0; i < replacementColor.length; i++) {
+                    operands.set(i, new COSFloat(replacementColor[i]));
+                }
+            }
+            next.write(operator, operands);
+        };
+
+        try (   InputStream resource = getClass().getResourceAsStream("document.pdf");
+                PDDocument document = PDDocument.load(resource);
+                InputStream pipelineResource = getClass().getResourceAsStream("document.pdf");
+                PDDocument pipelineDocument = PDDocument.load(pipelineResource)) {
+            for (int i = 0; i < document.getNumberOfPages(); i++) {
+                PDPage page = document.getPage(i);
+                createBigTextRemover(document, page, false).processPage(page);
+                new PdfContentStreamEditor(document, page) {
+                    @Override
+                    protected void write(ContentStreamWriter contentStreamWriter, Operator operator, List<COSBase> operands) throws IOException {
+                        recolorStage.write(this, (op, ops) -> super.write(contentStreamWriter, op, ops), operator, operands);
+                    }
+                }.processPage(page);
+
+                PDPage pipelinePage = pipelineDocument.getPage(i);
+                PdfContentStreamEditorPipeline pipeline = new PdfContentStreamEditorPipeline(pipelineDocument, pipelinePage);
+                pipeline.addStage(BIG_TEXT_STAGE).addStage(recolorStage);
+                pipeline.processPage(pipelinePage);
+
+                Assert.assertEquals("Content of page " + (i + 1), tokens(page), tokens(pipelinePage));
+            }
+            pipelineDocument.save(new File(RESULT_FOLDER, "document-noBigText-recolored-pipeline.pdf"));
+        }
+    }
+
+    static boolean isBlack(List<COSBase> operands) {
+        for (COSBase operand : operands) {
+            if (!(operand instanceof COSNumber) || Math.abs(((COSNumber)operand).floatValue()) >= 1e-4)
+                return false;
+        }
+        return true;
+    }
+
+    PdfContentStreamEditor createBigTextRemover(PDDocument document, PDPage page, boolean selective) {
+        return new PdfContentStreamEditor(document, page) {
+            @Override
+            protected Collection<String> getRequiredOperators() {
+                return selective ? BIG_TEXT_STAGE.getRequiredOperators() : null;
+            }
+
+            @Override
+            protected void write(ContentStreamWriter contentStreamWriter, Operator operator, List<COSBase> operands) throws IOException {
+                BIG_TEXT_STAGE.write(this, (op, ops) -> super.write(contentStreamWriter, op, ops), operator, operands);
+            }
+        };
+    }
+
+    /**
+     * Drops text showing operations with an effective font size above 100.
+     */
+    final static PdfContentStreamEditorPipeline.Stage BIG_TEXT_STAGE = new PdfContentStreamEditorPipeline.Stage() {
+        @Override
+        public void write(PdfContentStreamEditor editor, PdfContentStreamEditorPipeline.OperationWriter next, Operator operator, List<COSBase> operands) throws IOException {
+            if (TEXT_SHOWING_OPERATORS.contains(operator.getName()))
+            {
+                float fs = editor.getGraphicsState().getTextState().getFontSize();
+                Matrix matrix = editor.getTextMatrix().multiply(editor.getGraphicsState().getCurrentTransformationMatrix());
+                Point2D.Float transformedFsVector = matrix.transformPoint(0, fs);
+                Point2D.Float transformedOrigin = matrix.transformPoint(0, 0);
+                double transformedFs = transformedFsVector.distance(transformedOrigin);
+                if (transformedFs > 100)
+                    return;
+            }
+            next.write(operator, operands);
+        }
+
+        @Override
+        public Collection<String> getRequiredOperators() {
+            return TEXT_SHOWING_OPERATORS;
+        }
+
+        final List<String> TEXT_SHOWING_OPERATORS = Arrays.asList("Tj", "'", "\"", "TJ");
+    };
+
+    static List<String> tokens(PDPage page) throws IOException {
+        PDFStreamParser parser = new PDFStreamParser(page);
+        parser.parse();
+        List<String> tokens = new ArrayList<>();
+        for (Object token : parser.getTokens())
+            tokens.add(String.valueOf(token));
+        return tokens;
+    }
+
     /**
      * <a href="https://stackoverflow.com/questions/59489717/extract-content-streamimages-text-and-graphics-with-in-a-bbox-and-place-it-b">
      * Extract content stream(Images, Text and graphics) with in a BBOX. And place it back in new PDF without loosing any style?
@@ -246,6 +433,42 @@ public class EditPageContent {
         }
     }
 
+    /**
+     * <a href="https://stackoverflow.com/questions/61202822/remove-large-tokens-from-pdf-using-pdfbox-or-equivalent-library">
+     * Remove Large Tokens from PDF using PDFBox or equivalent library
+     * </a>
+     * <br/>
+     * <a href="https://drive.google.com/file/d/184waC6PjjDi8yolIZN5R-6vgWGR5SvKl/view?usp=sharing">
+     * kommers_annons_elite.pdf
+     * </a>
+     * <p>
+     * This test removes big text from all pages both sequentially and using
+     * {@link ParallelContentStreamEditing} with one page per range and checks
+     * that the resulting content streams parse to the same tokens.
+     * </p>
+     */
+    @Test
+    public void testRemoveBigTextKommersAnnonsEliteParallel() throws IOException {
+        byte[] bytes;
+        try (InputStream resource = getClass().getResourceAsStream("kommers_annons_elite.pdf")) {
+            bytes = resource.readAllBytes();
+        }
+        try (   PDDocument document = PDDocument.load(bytes);
+                PDDocument parallelDocument = PDDocument.load(bytes)) {
+            for (PDPage page : document.getPages())
+                createBigTextRemover(document, page, false).processPage(page);
+
+            ParallelContentStreamEditing editing = new ParallelContentStreamEditing((pdDocument, page) -> createBigTextRemover(pdDocument, page, false));
+            editing.setThreadCount(4);
+            editing.setPagesPerRange(1);
+            editing.edit(parallelDocument, bytes);
+
+            for (int i = 0; i < document.getNumberOfPages(); i++)
+                Assert.assertEquals("Content of page " + (i + 1), tokens(document.getPage(i)), tokens(parallelDocument.getPage(i)));
+            parallelDocument.save(new File(RESULT_FOLDER, "kommers_annons_elite-noBigText-parallel.pdf"));
+        }
+    }
+
     /**
      * <a href="https://stackoverflow.com/questions/63338236/i-want-to-convert-pdf-to-image-but-i-only-want-single-output-image-which-contain">
      * I Want to Convert PDF TO IMAGE but I only want single output image which contain all the images and Vector graphics only. I do not want text
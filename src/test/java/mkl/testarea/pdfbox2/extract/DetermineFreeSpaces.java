@@ -2,16 +2,25 @@ package mkl.testarea.pdfbox2.extract;
 
 import java.awt.Color;
 import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.PDPageContentStream.AppendMode;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -54,6 +63,147 @@ public class DetermineFreeSpaces {
         test("zugferd_add_xml_to_pdf.pdf", 200, 200);
     }
 
+    /**
+     * This test checks that the bulk mode of the {@link FreeSpaceFinder}
+     * finds the same free spaces as the default, incremental mode.
+     */
+    @Test
+    public void testZugferd_20x20_BulkMode() throws IOException {
+        try (
+            InputStream resourceStream = getClass().getResourceAsStream("zugferd_add_xml_to_pdf.pdf");
+            PDDocument pdDocument = PDDocument.load(resourceStream);
+        ) {
+            PDPage pdPage = pdDocument.getPage(0);
+            Set<Rectangle2D> expected = new HashSet<>(find(pdDocument, pdPage, 20, 20));
+
+            FreeSpaceFinder finder = new FreeSpaceFinder(pdPage, 20, 20);
+            finder.setBulkMode(true);
+            finder.processPage(pdPage);
+            Assert.assertEquals(expected, new HashSet<>(finder.getFreeSpaces()));
+        }
+    }
+
+    /**
+     * This test checks the query mode of the {@link FreeSpaceFinder} which
+     * only determines whether a free space of a given size exists in a given
+     * region, here the bottom third of the page, by comparison with the full
+     * free space computation for that region.
+     */
+    @Test
+    public void testZugferdBottomThird_FirstFit() throws IOException {
+        try (
+            InputStream resourceStream = getClass().getResourceAsStream("zugferd_add_xml_to_pdf.pdf");
+            PDDocument pdDocument = PDDocument.load(resourceStream);
+        ) {
+            PDPage pdPage = pdDocument.getPage(0);
+            PDRectangle cropBox = pdPage.getCropBox();
+            Rectangle2D bottomThird = new Rectangle2D.Float(cropBox.getLowerLeftX(), cropBox.getLowerLeftY(), cropBox.getWidth(), cropBox.getHeight() / 3);
+
+            for (float[] size : new float[][] { {200, 50}, {200, 200}, {500, 200} }) {
+                FreeSpaceFinder finder = new FreeSpaceFinder(pdPage, bottomThird, size[0], size[1]);
+                finder.processPage(pdPage);
+                Collection<Rectangle2D> expected = finder.getFreeSpaces();
+
+                Rectangle2D fit = FreeSpaceFinder.findFirstFit(pdPage, bottomThird, size[0], size[1]);
+                System.out.printf("\nFirst %.0fx%.0f fit in bottom third: %s\n", size[0], size[1], fit);
+                if (expected.isEmpty())
+                    Assert.assertNull(fit);
+                else
+                    Assert.assertTrue(expected.contains(fit));
+            }
+        }
+    }
+
+    /**
+     * This test checks the query mode of the {@link FreeSpaceFinder} on an
+     * empty page: the search region itself is the only free space, so it
+     * must be returned if it is large enough, and otherwise no fit at all.
+     */
+    @Test
+    public void testEmptyPage_FirstFit() throws IOException {
+        try (PDDocument pdDocument = new PDDocument()) {
+            PDPage pdPage = new PDPage();
+            pdDocument.addPage(pdPage);
+            Rectangle2D region = new Rectangle2D.Float(100, 100, 150, 100);
+
+            Assert.assertEquals(region, FreeSpaceFinder.findFirstFit(pdPage, region, 150, 100));
+            Assert.assertNull(FreeSpaceFinder.findFirstFit(pdPage, region, 200, 50));
+            Assert.assertNull(FreeSpaceFinder.findFirstFit(pdPage, region, 100, 150));
+        }
+    }
+
+    /**
+     * This test checks the query mode of the {@link FreeSpaceFinder} on a page
+     * with a horizontal rule stroked across the search region: the rule has a
+     * bounding box of zero height but nonetheless must split the region, so a
+     * fit can only be found above or below it.
+     */
+    @Test
+    public void testHorizontalRule_FirstFit() throws IOException {
+        try (PDDocument pdDocument = new PDDocument()) {
+            PDPage pdPage = new PDPage();
+            pdDocument.addPage(pdPage);
+            try (PDPageContentStream canvas = new PDPageContentStream(pdDocument, pdPage)) {
+                canvas.moveTo(50, 150);
+                canvas.lineTo(300, 150);
+                canvas.stroke();
+            }
+            Rectangle2D region = new Rectangle2D.Float(100, 100, 150, 100);
+
+            Assert.assertNull(FreeSpaceFinder.findFirstFit(pdPage, region, 150, 60));
+            Assert.assertEquals(new Rectangle2D.Double(100, 150, 150, 50), FreeSpaceFinder.findFirstFit(pdPage, region, 150, 40));
+
+            FreeSpaceFinder finder = new FreeSpaceFinder(pdPage, region, 150, 60);
+            finder.processPage(pdPage);
+            Assert.assertTrue(finder.getFreeSpaces().isEmpty());
+        }
+    }
+
+    /**
+     * This test checks the {@link DocumentFreeSpaceFinder} which processes
+     * multiple pages concurrently. The test document consists of copies of
+     * the page of the ZUGFeRD sample, so each page must have the same free
+     * spaces as that page.
+     */
+    @Test
+    public void testZugferdCopies_200x50_Document() throws IOException {
+        byte[] bytes;
+        Set<Rectangle2D> expected;
+        try (
+            InputStream resourceStream = getClass().getResourceAsStream("zugferd_add_xml_to_pdf.pdf");
+            PDDocument source = PDDocument.load(resourceStream);
+            PDDocument copies = new PDDocument();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ) {
+            expected = new HashSet<>(find(source, source.getPage(0), 200, 50));
+            for (int i = 0; i < 24; i++)
+                copies.importPage(source.getPage(0));
+            copies.save(baos);
+            bytes = baos.toByteArray();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            DocumentFreeSpaceFinder finder = new DocumentFreeSpaceFinder(200, 50);
+            AtomicInteger processed = new AtomicInteger();
+            Map<Integer, Collection<Rectangle2D>> result = finder.find(bytes, 2, 22, executor, 4, (pageIndex, freeSpaces) -> processed.incrementAndGet());
+            Assert.assertEquals(20, processed.get());
+            Assert.assertEquals(20, result.size());
+            for (int pageIndex = 2; pageIndex < 22; pageIndex++)
+                Assert.assertEquals(expected, new HashSet<>(result.get(pageIndex)));
+
+            DocumentFreeSpaceFinder.PageSpace firstFit = finder.findFirstFit(bytes, 5, 24, executor, 4);
+            Assert.assertEquals(5, firstFit.getPageIndex());
+            System.out.printf("\nFirst 200x50 fit from page index 5: page index %d, %s\n", firstFit.getPageIndex(), firstFit.getSpace());
+
+            Assert.assertNull(new DocumentFreeSpaceFinder(2000, 2000).findFirstFit(bytes, 0, 24, executor, 4));
+
+            Assert.assertThrows(IllegalArgumentException.class, () -> finder.find(bytes, 0, 24, executor, 0, null));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     void test(String resource, float minWidth, float minHeight) throws IOException {
         String name = new File(resource).getName();
         String target = String.format("%s-freeSpace%.0fx%.0f.pdf", name, minWidth, minHeight);
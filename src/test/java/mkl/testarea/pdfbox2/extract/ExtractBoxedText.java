@@ -157,4 +157,45 @@ public class ExtractBoxedText {
             }
         }
     }
+
+    /**
+     * <a href="https://stackoverflow.com/questions/51380677/extracting-text-from-pdf-java-using-pdfbox-library-from-a-tables-rows-with-di">
+     * Extracting text from pdf (java using pdfbox library) from a table's rows with different heights
+     * </a>
+     * <br/>
+     * <a href="https://www.info.uvt.ro/wp-content/uploads/2018/07/Programare-licenta-5-Iulie-2018_1.pdf">
+     * Programare-licenta-5-Iulie-2018_1.pdf
+     * </a>
+     * <p>
+     * This test applies the document-wide {@link TableGridFinder} to the test file.
+     * The table in it is continued across the pages and, therefore, found as a single
+     * table with one segment per page. The cells are drawn into the document.
+     * </p>
+     */
+    @Test
+    public void testFindTableGrids() throws IOException {
+        try (   InputStream resource = getClass().getResourceAsStream("Programare-licenta-5-Iulie-2018_1.pdf");
+                PDDocument document = PDDocument.load(resource) ) {
+            List<TableGridFinder.Table> tables = new TableGridFinder().findTables(document);
+            for (TableGridFinder.Table table : tables) {
+                System.out.printf("Table with %d rows and %d columns\n", table.getRowCount(), table.getColumnCount());
+                for (TableGridFinder.TableGrid segment : table.getSegments()) {
+                    System.out.printf("  %s\n", segment);
+
+                    PDPage page = document.getPage(segment.getPageIndex());
+                    try (PDPageContentStream canvas = new PDPageContentStream(document, page, AppendMode.APPEND, true, true)) {
+                        canvas.setStrokingColor(Color.RED);
+                        for (int row = 0; row < segment.getRowCount(); row++) {
+                            for (int column = 0; column < segment.getColumnCount(); column++) {
+                                Rectangle2D rectangle = segment.getCell(row, column);
+                                canvas.addRect((float)rectangle.getX(), (float)rectangle.getY(), (float)rectangle.getWidth(), (float)rectangle.getHeight());
+                            }
+                        }
+                        canvas.stroke();
+                    }
+                }
+            }
+            document.save(new File(RESULT_FOLDER, "Programare-licenta-5-Iulie-2018_1-grids.pdf"));
+        }
+    }
 }
@@ -14,6 +14,7 @@ import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.PDPageContentStream.AppendMode;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -101,4 +102,41 @@ public class ExtractCheckBoxes {
             document.save(new File(RESULT_FOLDER, "Updated_Form-withChecks.pdf"));
         }
     }
+
+    /**
+     * <a href="https://stackoverflow.com/questions/64093610/extract-checkbox-value-out-of-pdf-1-7-using-pdfbox">
+     * Extract Checkbox value out of PDF 1.7 using PDFBox
+     * </a>
+     * <br/>
+     * <a href="https://drive.google.com/file/d/12O9W3SE4l4EZg7WArYoL3e6M579I7w3U/view?usp=sharing">
+     * Updated_Form.pdf
+     * </a>
+     * <p>
+     * This test illustrates the use of a normalized {@link PdfShapeFinder.ShapeTemplate}:
+     * the template of the bottom side of the check boxes, once normalized, also matches
+     * the other three sides which merely are rotated copies of it.
+     * </p>
+     */
+    @Test
+    public void testFindNormalizedShapesInUpdatedForm() throws IOException {
+        try (   InputStream resource = getClass().getResourceAsStream("Updated_Form.pdf");
+                PDDocument document = PDDocument.load(resource)  ) {
+            PdfShapeFinder.ShapeTemplate boxSide = new PdfShapeFinder.ShapeTemplate("boxSide",
+                    new float[] {-7.5f, 0f, -.75f, -.75f, 9f, 0f, -.75f, .75f}, new float[] {-7.5f, 0f}).setNormalized(true, .01f);
+            for (PDPage page : document.getPages())
+            {
+                PdfCheckBoxFinder boxFinder = new PdfCheckBoxFinder(page);
+                boxFinder.processPage(page);
+
+                PdfShapeFinder shapeFinder = new PdfShapeFinder(page);
+                shapeFinder.addTemplate(boxSide);
+                shapeFinder.processPage(page);
+                for (PdfShapeFinder.ShapeMatch match : shapeFinder.getMatches()) {
+                    Point2D anchor = match.getAnchor();
+                    System.out.printf(Locale.ROOT, "* %s (%4.3f, %4.3f) - scale %3.2f, rotation %3.0f\n", match.getTemplate(), anchor.getX(), anchor.getY(), match.getScale(), Math.toDegrees(match.getRotation()));
+                }
+                Assert.assertEquals("Unexpected number of box sides", 4 * boxFinder.getBoxes().size(), shapeFinder.getMatches().size());
+            }
+        }
+    }
 }
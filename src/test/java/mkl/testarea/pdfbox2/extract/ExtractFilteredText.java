@@ -1,5 +1,7 @@
 package mkl.testarea.pdfbox2.extract;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -10,6 +12,7 @@ import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
 import org.apache.pdfbox.pdmodel.graphics.color.PDICCBased;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -80,4 +83,151 @@ public class ExtractFilteredText {
             Files.write(new File(RESULT_FOLDER, "ES1214377-page1_6-filtered.txt").toPath(), Collections.singleton(text));
         }
     }
+
+    /**
+     * <a href="https://stackoverflow.com/questions/63936154/how-to-identify-and-remove-hidden-text-from-the-pdf-using-pdfbox-java">
+     * How to identify and remove hidden text from the PDF using PDFBox java
+     * </a>
+     * <br/>
+     * <a href="https://drive.google.com/file/d/1jFhF9y8jh_tr9POU258Fvn9WDRGdv-4-/view?usp=drivesdk">
+     * ES1315248.pdf
+     * </a>
+     * <p>
+     * This test uses the {@link ParallelTextExtractor} to extract the text from
+     * the whole of ES1315248.pdf except the white "DRAFT - UNAUDITED" with one
+     * {@link PDFFilteringTextStripper} per page range in parallel, and checks
+     * that the result equals that of a single stripper for the whole document.
+     * </p>
+     */
+    @Test
+    public void testExtractNoWhiteTextES1315248Parallel() throws IOException {
+        PDFFilteringTextStripper.TextStripperFilter filter = createNoWhiteFilter();
+
+        byte[] bytes;
+        try (   InputStream resource = getClass().getResourceAsStream("ES1315248.pdf")  ) {
+            bytes = resource.readAllBytes();
+        }
+
+        String sequentialText;
+        try (   PDDocument document = PDDocument.load(bytes)  ) {
+            sequentialText = new PDFFilteringTextStripper(filter).getText(document);
+        }
+
+        ParallelTextExtractor<PDFFilteringTextStripper> extractor = new ParallelTextExtractor<>(() -> new PDFFilteringTextStripper(filter));
+        extractor.setPagesPerRange(3);
+        String parallelText = extractor.getText(bytes);
+        Files.write(new File(RESULT_FOLDER, "ES1315248-filtered-parallel.txt").toPath(), Collections.singleton(parallelText));
+
+        Assert.assertEquals("Parallel extraction result differs from sequential one", sequentialText, parallelText);
+    }
+
+    /**
+     * <a href="https://stackoverflow.com/questions/63936154/how-to-identify-and-remove-hidden-text-from-the-pdf-using-pdfbox-java">
+     * How to identify and remove hidden text from the PDF using PDFBox java
+     * </a>
+     * <br/>
+     * <a href="https://drive.google.com/file/d/1jFhF9y8jh_tr9POU258Fvn9WDRGdv-4-/view?usp=drivesdk">
+     * ES1315248.pdf
+     * </a>
+     * <p>
+     * This test feeds the glyphs accepted by the {@link PDFFilteringTextStripper}
+     * into a {@link ColumnarGlyphEncoder} instead of writing text, and checks that
+     * decoding the result yields the same glyphs as a sink receiving them directly.
+     * </p>
+     */
+    @Test
+    public void testEncodeNoWhiteGlyphsES1315248() throws IOException {
+        try (   InputStream resource = getClass().getResourceAsStream("ES1315248.pdf");
+                PDDocument document = PDDocument.load(resource)  ) {
+            PDFFilteringTextStripper stripper = new PDFFilteringTextStripper(createNoWhiteFilter());
+            stripper.setEndPage(6);
+            stripper.setWriteText(false);
+            // markers which must not be written either
+            stripper.setPageStart("<page>");
+            stripper.setParagraphStart("<p>");
+            stripper.setParagraphEnd("</p>");
+            stripper.setArticleStart("<article>");
+            stripper.setArticleEnd("</article>");
+
+            StringBuilder direct = new StringBuilder();
+            stripper.setGlyphRunSink((count, codePoints, codePointStarts, x, y, widths, heights, fontIds) -> {
+                for (int i = 0; i < count; i++)
+                    direct.append(String.format("%s %.2f %.2f %d\n", new String(codePoints, codePointStarts[i], codePointStarts[i + 1] - codePointStarts[i]), x[i], y[i], fontIds[i]));
+            });
+            stripper.getText(document);
+
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            ColumnarGlyphEncoder encoder = new ColumnarGlyphEncoder(encoded);
+            stripper.setGlyphRunSink(encoder);
+            String text = stripper.getText(document);
+            encoder.finish();
+            Files.write(new File(RESULT_FOLDER, "ES1315248-page1_6-filtered.glyc").toPath(), encoded.toByteArray());
+
+            StringBuilder decoded = new StringBuilder();
+            ColumnarGlyphEncoder.decode(new ByteArrayInputStream(encoded.toByteArray()), (count, codePoints, codePointStarts, x, y, widths, heights, fontIds) -> {
+                for (int i = 0; i < count; i++)
+                    decoded.append(String.format("%s %.2f %.2f %d\n", new String(codePoints, codePointStarts[i], codePointStarts[i + 1] - codePointStarts[i]), x[i], y[i], fontIds[i]));
+            });
+
+            Assert.assertTrue("No text expected", text.isEmpty());
+            Assert.assertTrue("Glyphs expected", direct.length() > 0);
+            Assert.assertEquals("Decoded glyphs differ", direct.toString(), decoded.toString());
+        }
+    }
+
+    /**
+     * <a href="https://stackoverflow.com/questions/63936154/how-to-identify-and-remove-hidden-text-from-the-pdf-using-pdfbox-java">
+     * How to identify and remove hidden text from the PDF using PDFBox java
+     * </a>
+     * <br/>
+     * <a href="https://drive.google.com/file/d/1jFhF9y8jh_tr9POU258Fvn9WDRGdv-4-/view?usp=drivesdk">
+     * ES1315248.pdf
+     * </a>
+     * <p>
+     * This test does the same as {@link #testExtractNoWhiteTextES1315248()} but
+     * with a {@link TextStripperFilterChain} combining the color check, declared
+     * as depending on the graphics state only, with a (here always accepting)
+     * region check and a font size check. The result must be the same, and the
+     * color decision must mostly be taken from the cache.
+     * </p>
+     */
+    @Test
+    public void testExtractNoWhiteTextES1315248Chain() throws IOException {
+        PDFFilteringTextStripper.TextStripperFilter noWhiteFilter = createNoWhiteFilter();
+        try (   InputStream resource = getClass().getResourceAsStream("ES1315248.pdf");
+                PDDocument document = PDDocument.load(resource)  ) {
+            PDFFilteringTextStripper stripper = new PDFFilteringTextStripper(noWhiteFilter);
+            stripper.setEndPage(6);
+            String expected = stripper.getText(document);
+
+            TextStripperFilterChain chain = new TextStripperFilterChain()
+                    .add("region", (text, gs) -> text.getXDirAdj() > -10000 && text.getYDirAdj() > -10000, 10)
+                    .addGraphicsStateFilter("color", gs -> noWhiteFilter.accept(null, gs), 2)
+                    .add("font size", (text, gs) -> text.getFontSizeInPt() > 0, 1);
+            chain.setTiming(true);
+            stripper = new PDFFilteringTextStripper(chain);
+            stripper.setEndPage(6);
+            String text = stripper.getText(document);
+            Files.write(new File(RESULT_FOLDER, "ES1315248-page1_6-filtered-chain.txt").toPath(), Collections.singleton(text));
+            System.out.printf("Filter chain statistics:\n%s", chain);
+
+            Assert.assertEquals("Filter chain result differs from single filter one", expected, text);
+            TextStripperFilterChain.Entry colorEntry = chain.getEntries().get(1);
+            Assert.assertEquals("color", colorEntry.getName());
+            Assert.assertTrue("Graphics state decisions expected to be reused", colorEntry.getCacheHits() > colorEntry.getEvaluations() / 2);
+        }
+    }
+
+    /**
+     * @return a filter rejecting text drawn in CMYK white, like the
+     * "DRAFT - UNAUDITED" in ES1315248.pdf; it only depends on the
+     * graphics state.
+     */
+    static PDFFilteringTextStripper.TextStripperFilter createNoWhiteFilter() {
+        float[] colorToFilter = new float[] {0,0,0,0};
+        return (text, gs) -> {
+            PDColor color = gs.getNonStrokingColor();
+            return color == null || !((color.getColorSpace() instanceof PDDeviceCMYK) && Arrays.equals(color.getComponents(), colorToFilter));
+        };
+    }
 }
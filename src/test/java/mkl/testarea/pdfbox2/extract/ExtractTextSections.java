@@ -9,6 +9,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -43,14 +44,7 @@ public class ExtractTextSections
     @Test
     public void testWang05a() throws IOException
     {
-        List<TextSectionDefinition> sectionDefinitions = Arrays.asList(
-                new TextSectionDefinition("Titel", x->x.get(0).get(0).getFont().getName().contains("CMBX12"), MultiLine.singleLine, false),
-                new TextSectionDefinition("Authors", x->x.get(0).get(0).getFont().getName().contains("CMR10"), MultiLine.multiLine, false),
-                new TextSectionDefinition("Institutions", x->x.get(0).get(0).getFont().getName().contains("CMR9"), MultiLine.multiLine, false),
-                new TextSectionDefinition("Addresses", x->x.get(0).get(0).getFont().getName().contains("CMTT9"), MultiLine.multiLine, false),
-                new TextSectionDefinition("Abstract", x->x.get(0).get(0).getFont().getName().contains("CMBX9"), MultiLine.multiLineIntro, false),
-                new TextSectionDefinition("Section", x->x.get(0).get(0).getFont().getName().contains("CMBX12"), MultiLine.multiLineHeader, true)
-                );
+        List<TextSectionDefinition> sectionDefinitions = createWang05aDefinitions();
         try (   InputStream resource = getClass().getResourceAsStream("Wang05a.pdf")    )
         {
             PDDocument document = PDDocument.load(resource);
@@ -68,4 +62,55 @@ public class ExtractTextSections
             Files.write(new File(RESULT_FOLDER, "Wang05a.txt").toPath(), texts);
         }
     }
+
+    /**
+     * <a href="http://stackoverflow.com/questions/41654518/how-to-read-pdf-departmentsheader-abstract-refrences-with-pdfbox">
+     * How to read PDF departments(header,abstract,refrences) With PDFBox?
+     * </a>
+     * <br/>
+     * <a href="http://merlot.usc.edu/csac-f06/papers/Wang05a.pdf">
+     * Wang05a.pdf
+     * </a>
+     * <p>
+     * This test demonstrates the streaming mode of the {@link PDFTextSectionStripper}
+     * in which each section is forwarded to a consumer as soon as it is closed,
+     * and checks that the streamed sections equal those collected in the default
+     * mode.
+     * </p>
+     */
+    @Test
+    public void testWang05aStreaming() throws IOException
+    {
+        List<TextSectionDefinition> sectionDefinitions = createWang05aDefinitions();
+        try (   InputStream resource = getClass().getResourceAsStream("Wang05a.pdf")    )
+        {
+            PDDocument document = PDDocument.load(resource);
+            List<String> texts = new ArrayList<>();
+            PDFTextSectionStripper stripper = new PDFTextSectionStripper(sectionDefinitions, section -> texts.add(section.toString()));
+            stripper.getText(document);
+
+            System.out.printf("Streamed %d sections.\n", texts.size());
+            Assert.assertTrue("Sections have been collected in streaming mode", stripper.getSections().isEmpty());
+            Files.write(new File(RESULT_FOLDER, "Wang05a-streamed.txt").toPath(), texts);
+
+            PDFTextSectionStripper collectingStripper = new PDFTextSectionStripper(sectionDefinitions);
+            collectingStripper.getText(document);
+            List<String> collectedTexts = new ArrayList<>();
+            for (TextSection textSection : collectingStripper.getSections())
+                collectedTexts.add(textSection.toString());
+            Assert.assertEquals("Streamed sections differ from collected ones", collectedTexts, texts);
+        }
+    }
+
+    List<TextSectionDefinition> createWang05aDefinitions()
+    {
+        return Arrays.asList(
+                new TextSectionDefinition("Titel", x->x.get(0).get(0).getFont().getName().contains("CMBX12"), MultiLine.singleLine, false),
+                new TextSectionDefinition("Authors", x->x.get(0).get(0).getFont().getName().contains("CMR10"), MultiLine.multiLine, false),
+                new TextSectionDefinition("Institutions", x->x.get(0).get(0).getFont().getName().contains("CMR9"), MultiLine.multiLine, false),
+                new TextSectionDefinition("Addresses", x->x.get(0).get(0).getFont().getName().contains("CMTT9"), MultiLine.multiLine, false),
+                new TextSectionDefinition("Abstract", x->x.get(0).get(0).getFont().getName().contains("CMBX9"), MultiLine.multiLineIntro, false),
+                new TextSectionDefinition("Section", x->x.get(0).get(0).getFont().getName().contains("CMBX12"), MultiLine.multiLineHeader, true)
+                );
+    }
 }
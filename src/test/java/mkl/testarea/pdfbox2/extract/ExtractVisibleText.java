@@ -9,6 +9,7 @@ import java.util.Collections;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -288,4 +289,34 @@ public class ExtractVisibleText {
             Files.write(new File(RESULT_FOLDER, "FooterText.txt").toPath(), Collections.singleton(text));
         }
     }
+
+    /**
+     * <a href="https://stackoverflow.com/questions/47908124/pdfbox-removing-invisible-text-by-clip-filling-paths-issue">
+     * PDFBox - Removing invisible text (by clip/filling paths issue)
+     * </a>
+     * <br/>
+     * <a href="https://drive.google.com/open?id=1xcZOusx3cEdZX4AT8QAVDqZe33YWla0H">
+     * test.pdf
+     * </a> as testDmitryK.pdf
+     * <p>
+     * This test shows how often the {@link PDFVisibleTextStripper} could use
+     * arithmetic rectangle clip intersections and how often it had to fall back
+     * to the {@link java.awt.geom.Area} based clip path, cf. {@link ClipRectangleTracker}.
+     * </p>
+     */
+    @Test
+    public void testClipCountersTestDmitryK() throws IOException {
+        try (   InputStream resource = getClass().getResourceAsStream("testDmitryK.pdf")  ) {
+            PDDocument document = PDDocument.load(resource);
+            PDFVisibleTextStripper stripper = new PDFVisibleTextStripper();
+            stripper.setSortByPosition(true);
+            String text = stripper.getText(document);
+
+            ClipRectangleTracker clipTracker = stripper.getClipTracker();
+            System.out.printf("\n*\n* testDmitryK.pdf clips: %d rectangle intersections, %d area fallbacks\n*\n",
+                    clipTracker.getRectangleIntersections(), clipTracker.getAreaFallbacks());
+            Files.write(new File(RESULT_FOLDER, "testDmitryK-counted.txt").toPath(), Collections.singleton(text));
+            Assert.assertTrue("No clip rectangle has been intersected arithmetically", clipTracker.getRectangleIntersections() > 0);
+        }
+    }
 }
@@ -4,12 +4,16 @@ package mkl.testarea.pdfbox2.extract;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.apache.pdfbox.text.TextPosition;
 import org.apache.pdfbox.util.Matrix;
+import org.junit.Assert;
 import org.junit.Test;
 
 /**
@@ -58,6 +62,89 @@ public class SearchSubword
         }
     }
     
+    /**
+     * <a href="https://stackoverflow.com/questions/62792228/search-texts-and-get-position-in-pdf-with-java">
+     * Search texts and get position in pdf with java
+     * </a>
+     * <br/>
+     * Variables.pdf
+     * <p>
+     * This test searches a number of terms at once using the {@link MultiTermSearcher}
+     * which compiles them into a single automaton and so needs only a single pass over
+     * the text positions of each page. The hits for each term are the same as those of
+     * {@link #findSubwordsImproved(PDDocument, int, String)} for that term alone.
+     * </p>
+     */
+    @Test
+    public void testVariablesMultiTerm() throws IOException
+    {
+        try (   InputStream resource = getClass().getResourceAsStream("Variables.pdf");
+                PDDocument document = PDDocument.load(resource);    )
+        {
+            System.out.println("\nVariables.pdf (multi term)\n--------------------------\n");
+            List<String> terms = Arrays.asList("${var1}", "${var 2}", "var", "${", "}");
+            MultiTermSearcher searcher = new MultiTermSearcher(terms);
+            List<MultiTermSearcher.Hit> hits = searcher.search(document);
+            for (MultiTermSearcher.Hit hit : hits)
+                System.out.printf("  %s\n", hit);
+
+            for (String term : terms)
+            {
+                int count = 0;
+                for (int page = 1; page <= document.getNumberOfPages(); page++)
+                    count += findSubwordsImproved(document, page, term).size();
+                int multiCount = 0;
+                for (MultiTermSearcher.Hit hit : hits)
+                {
+                    if (term.equals(hit.getTerm()))
+                    {
+                        Assert.assertEquals(term, hit.getSequence().toString());
+                        multiCount++;
+                    }
+                }
+                Assert.assertEquals("Hits for " + term, count, multiCount);
+            }
+        }
+    }
+
+    /**
+     * <a href="https://stackoverflow.com/questions/62792228/search-texts-and-get-position-in-pdf-with-java">
+     * Search texts and get position in pdf with java
+     * </a>
+     * <br/>
+     * Variables.pdf
+     * <p>
+     * This test matches a regular expression directly against the {@link TextPositionSequence}
+     * of all text positions of a page, i.e. without creating a {@link String} first. As the
+     * sequence is backed by a shared character buffer, this is cheap; the match offsets are
+     * character offsets which map back to the text positions.
+     * </p>
+     */
+    @Test
+    public void testVariablesRegex() throws IOException
+    {
+        try (   InputStream resource = getClass().getResourceAsStream("Variables.pdf");
+                PDDocument document = PDDocument.load(resource);    )
+        {
+            System.out.println("\nVariables.pdf (regex)\n---------------------\n");
+            Pattern pattern = Pattern.compile("\\$\\{[^}]*\\}");
+            for (int page = 1; page <= document.getNumberOfPages(); page++)
+            {
+                TextPositionSequence pageSequence = collectTextPositions(document, page);
+                Matcher matcher = pattern.matcher(pageSequence);
+                while (matcher.find())
+                {
+                    TextPositionSequence hit = pageSequence.subSequence(matcher.start(), matcher.end());
+                    Assert.assertEquals(matcher.group(), hit.toString());
+                    TextPosition lastPosition = hit.textPositionAt(hit.length() - 1);
+                    System.out.printf("  '%s' on page %s at %s, %s with last letter '%s' at %s, %s\n",
+                            hit, page, hit.getX(), hit.getY(),
+                            lastPosition.getUnicode(), lastPosition.getXDirAdj(), lastPosition.getYDirAdj());
+                }
+            }
+        }
+    }
+
     void printSubwords(PDDocument document, String searchTerm) throws IOException
     {
         System.out.printf("* Looking for '%s'\n", searchTerm);
@@ -125,7 +212,7 @@ public class SearchSubword
         return hits;
     }
 
-    List<TextPositionSequence> findSubwordsImproved(PDDocument document, int page, String searchTerm) throws IOException
+    TextPositionSequence collectTextPositions(PDDocument document, int page) throws IOException
     {
         final List<TextPosition> allTextPositions = new ArrayList<>();
         PDFTextStripper stripper = new PDFTextStripper()
@@ -160,8 +247,13 @@ public class SearchSubword
         stripper.setEndPage(page);
         stripper.getText(document);
 
+        return new TextPositionSequence(allTextPositions);
+    }
+
+    List<TextPositionSequence> findSubwordsImproved(PDDocument document, int page, String searchTerm) throws IOException
+    {
         final List<TextPositionSequence> hits = new ArrayList<TextPositionSequence>();
-        TextPositionSequence word = new TextPositionSequence(allTextPositions);
+        TextPositionSequence word = collectTextPositions(document, page);
         String string = word.toString();
         System.out.printf("  -- %s\n", string);
 
@@ -1,22 +1,33 @@
 package mkl.testarea.pdfbox2.merge;
 
 import java.awt.Color;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.PDPageContentStream.AppendMode;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
 import org.apache.pdfbox.pdmodel.font.PDType1Font;
 import org.apache.pdfbox.util.Matrix;
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import mkl.testarea.pdfbox2.merge.PdfDenseMergeTool.DocumentSource;
+
 /**
  * @author mkl
  */
@@ -67,6 +78,61 @@ public class DenseMerging {
                         document1, document2, document3, document4, document5));
     }
 
+    /**
+     * <a href="https://stackoverflow.com/questions/54283827/pdf-files-merge-remove-blank-at-end-of-page-i-am-using-pdfbox-v2-0-13-to-achi">
+     * PDF files merge : remove blank at end of page. I am using PDFBox v2.0.13 to achieve that
+     * </a>
+     * <p>
+     * This test checks the streaming mode of the {@link PdfDenseMergeTool}
+     * in which each input is opened only when needed and closed right after
+     * its pages have been placed.
+     * </p>
+     */
+    @Test
+    public void testWithTextStreaming() throws IOException {
+        List<DocumentSource> sources = new ArrayList<>();
+        for (int i = 1; i <= 500; i++) {
+            String prefix = "Receipt " + i;
+            sources.add(() -> createTextDocument(new PDRectangle(0, 0, 400, 600),
+                    Matrix.getTranslateInstance(30, 300),
+                    prefix + " line 1", prefix + " line 2", prefix + " line 3"));
+        }
+
+        PdfDenseMergeTool tool = new PdfDenseMergeTool(PDRectangle.A4, 30, 30, 10);
+        try (OutputStream result = new FileOutputStream(new File(RESULT_FOLDER, "Merge with Text, streaming.pdf"))) {
+            tool.merge(result, sources, MemoryUsageSetting.setupTempFileOnly());
+        }
+    }
+
+    /**
+     * <a href="https://stackoverflow.com/questions/54283827/pdf-files-merge-remove-blank-at-end-of-page-i-am-using-pdfbox-v2-0-13-to-achi">
+     * PDF files merge : remove blank at end of page. I am using PDFBox v2.0.13 to achieve that
+     * </a>
+     * <p>
+     * This test checks the two phase mode of the {@link PdfDenseMergeTool}
+     * in which the input pages are analyzed in parallel.
+     * </p>
+     */
+    @Test
+    public void testWithTextParallel() throws IOException {
+        List<PDDocument> documents = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            documents.add(createTextDocument(new PDRectangle(0, -300, 400, 600),
+                    Matrix.getTranslateInstance(30 + i, -100 + 2 * i),
+                    "Doc " + i + " line 1", "Doc " + i + " line 2", "Doc " + i + " line 3"));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try (OutputStream result = new FileOutputStream(new File(RESULT_FOLDER, "Merge with Text, parallel analysis.pdf"))) {
+            PdfDenseMergeTool tool = new PdfDenseMergeTool(PDRectangle.A4, 30, 30, 10);
+            tool.merge(result, documents, executor);
+        } finally {
+            executor.shutdown();
+            for (PDDocument document : documents)
+                document.close();
+        }
+    }
+
     PDDocument createTextDocument(PDRectangle size, Matrix textMatrix, String... lines) throws IOException {
         PDDocument document = new PDDocument();
         PDPage page = new PDPage(size);
@@ -140,6 +206,44 @@ public class DenseMerging {
         document.save(new File(RESULT_FOLDER, "Test Document Vertically Marked.pdf"));
     }
 
+    /**
+     * <a href="https://stackoverflow.com/questions/60052967/how-to-dense-merge-pdf-files-using-pdfbox-2-without-whitespace-near-page-breaks">
+     * How to dense merge PDF files using PDFBox 2 without whitespace near page breaks?
+     * </a>
+     * <p>
+     * This test checks that the {@link FloatIntervalSet} used by the
+     * {@link PageVerticalAnalyzer} yields the same flips whether the
+     * intervals are added one at a time or in a batch. (Intervals merely
+     * touching each other are excluded as only the batch mode coalesces
+     * them in any order.)
+     * </p>
+     */
+    @Test
+    public void testFloatIntervalSet() {
+        Random random = new Random(42);
+        FloatIntervalSet single = new FloatIntervalSet();
+        FloatIntervalSet batch = new FloatIntervalSet();
+        for (int i = 0; i < 20000; i++) {
+            // interval starts are 1 mod 4, ends are 2 mod 4, so intervals never merely touch
+            float low = 4 * random.nextInt(20000) + 1;
+            float high = low + 4 * random.nextInt(5) + 1;
+            if (random.nextBoolean()) {
+                single.addInterval(low, high);
+                batch.addPendingInterval(low, high);
+            } else {
+                single.addInterval(high, low);
+                batch.addPendingInterval(high, low);
+            }
+            if (i % 5000 == 0)
+                batch.normalize();
+        }
+        batch.normalize();
+
+        Assert.assertArrayEquals(single.toFloatArray(), batch.toFloatArray(), 0);
+        for (int i = 1; i < single.size(); i++)
+            Assert.assertTrue("Flips must be ascending", single.getFlip(i - 1) <= single.getFlip(i));
+    }
+
     /**
      * <a href="https://stackoverflow.com/questions/60052967/how-to-dense-merge-pdf-files-using-pdfbox-2-without-whitespace-near-page-breaks">
      * How to dense merge PDF files using PDFBox 2 without whitespace near page breaks?
@@ -157,6 +261,26 @@ public class DenseMerging {
      */
     @Test
     public void testVeryDenseMerging() throws IOException {
+        List<PDDocument> samples = createVeryDenseMergingSamples();
+        PDDocument document1 = samples.get(0), document2 = samples.get(1), document3 = samples.get(2),
+                document4 = samples.get(3), document5 = samples.get(4), document6 = samples.get(5);
+        document6.save(new File(RESULT_FOLDER, "Test Text and Graphics.pdf"));
+
+        PdfVeryDenseMergeTool tool = new PdfVeryDenseMergeTool(PDRectangle.A4, 30, 30, 10);
+        tool.merge(new FileOutputStream(new File(RESULT_FOLDER, "Merge with Text and Graphics, very dense.pdf")),
+                Arrays.asList(document1, document2, document3, document4, document5, document6,
+                        document1, document2, document3, document4, document5, document6,
+                        document1, document2, document3, document4, document5, document6,
+                        document1, document2, document3, document4, document5, document6,
+                        document1, document2, document3, document4, document5, document6));
+    }
+
+    /**
+     * Creates the sample documents for the very dense merging tests: text
+     * at different positions, in different crop boxes, rotated, and with
+     * graphics.
+     */
+    List<PDDocument> createVeryDenseMergingSamples() throws IOException {
         PDDocument document1 = createTextDocument(new PDRectangle(0, 0, 400, 600), 
                 Matrix.getTranslateInstance(30, 300),
                 "Doc 1 line 1", "Doc 1 line 2", "Doc 1 line 3");
@@ -186,14 +310,160 @@ public class DenseMerging {
             content.curveTo(80, 140, 160, 140, 80, 180);
             content.closeAndFillAndStroke();
         }
-        document6.save(new File(RESULT_FOLDER, "Test Text and Graphics.pdf"));
+        return Arrays.asList(document1, document2, document3, document4, document5, document6);
+    }
 
-        PdfVeryDenseMergeTool tool = new PdfVeryDenseMergeTool(PDRectangle.A4, 30, 30, 10);
-        tool.merge(new FileOutputStream(new File(RESULT_FOLDER, "Merge with Text and Graphics, very dense.pdf")),
-                Arrays.asList(document1, document2, document3, document4, document5, document6,
-                        document1, document2, document3, document4, document5, document6,
-                        document1, document2, document3, document4, document5, document6,
-                        document1, document2, document3, document4, document5, document6,
-                        document1, document2, document3, document4, document5, document6));
+    /**
+     * <a href="https://stackoverflow.com/questions/60052967/how-to-dense-merge-pdf-files-using-pdfbox-2-without-whitespace-near-page-breaks">
+     * How to dense merge PDF files using PDFBox 2 without whitespace near page breaks?
+     * </a>
+     * <p>
+     * This test checks that the batch mode of {@link FloatIntervalSet} used by
+     * the {@link PageVerticalAnalyzer} yields the same flips for the samples of
+     * {@link #testVeryDenseMerging()} as the original single interval mode,
+     * which keeps zero-width gaps between touching intervals depending on their
+     * order. As the {@link PdfVeryDenseMergeTool} places pages based on these
+     * flips only, its merged output does not change either.
+     * </p>
+     */
+    @Test
+    public void testVeryDenseMergingBatchFlips() throws IOException {
+        for (PDDocument document : createVeryDenseMergingSamples()) {
+            PDPage page = document.getPage(0);
+            SingleIntervalVerticalAnalyzer analyzer = new SingleIntervalVerticalAnalyzer(page);
+            analyzer.processPage(page);
+            Assert.assertArrayEquals(analyzer.singleIntervalFlips.toFloatArray(), analyzer.getVerticalFlips().toFloatArray(), 0);
+            document.close();
+        }
+    }
+
+    /**
+     * Additionally adds each vertical use section one at a time to a separate set.
+     */
+    static class SingleIntervalVerticalAnalyzer extends PageVerticalAnalyzer {
+        SingleIntervalVerticalAnalyzer(PDPage page) {
+            super(page);
+        }
+
+        @Override
+        void addVerticalUseSection(float from, float to) {
+            super.addVerticalUseSection(from, to);
+            singleIntervalFlips.addInterval(from, to);
+        }
+
+        final FloatIntervalSet singleIntervalFlips = new FloatIntervalSet();
+    }
+
+    /**
+     * <a href="https://stackoverflow.com/questions/60052967/how-to-dense-merge-pdf-files-using-pdfbox-2-without-whitespace-near-page-breaks">
+     * How to dense merge PDF files using PDFBox 2 without whitespace near page breaks?
+     * </a>
+     * <p>
+     * This test checks the two phase mode of the {@link PdfVeryDenseMergeTool}
+     * in which the input pages are analyzed in parallel.
+     * </p>
+     */
+    @Test
+    public void testVeryDenseMergingParallel() throws IOException {
+        List<PDDocument> documents = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            documents.add(createTextDocument(new PDRectangle(0, 0, 400, 600),
+                    Matrix.getTranslateInstance(30, 300 + i),
+                    "Doc " + i + " line 1", "Doc " + i + " line 2", "Doc " + i + " line 3"));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try (OutputStream result = new FileOutputStream(new File(RESULT_FOLDER, "Merge with Text, very dense, parallel analysis.pdf"))) {
+            PdfVeryDenseMergeTool tool = new PdfVeryDenseMergeTool(PDRectangle.A4, 30, 30, 10);
+            tool.merge(result, documents, executor);
+        } finally {
+            executor.shutdown();
+            for (PDDocument document : documents)
+                document.close();
+        }
+    }
+
+    /**
+     * <a href="https://stackoverflow.com/questions/60052967/how-to-dense-merge-pdf-files-using-pdfbox-2-without-whitespace-near-page-breaks">
+     * How to dense merge PDF files using PDFBox 2 without whitespace near page breaks?
+     * </a>
+     * <p>
+     * This test checks the {@link PageLayoutCache} with both merge tools.
+     * The same template page is merged many times, so only its first
+     * occurrence needs to be analyzed; as the cache also uses a directory,
+     * later runs of this test even skip that analysis.
+     * </p>
+     */
+    @Test
+    public void testMergingWithLayoutCache() throws IOException {
+        File cacheFolder = new File(RESULT_FOLDER, "layout-cache");
+        PageLayoutCache cache = new PageLayoutCache(100, cacheFolder);
+
+        List<PDDocument> documents = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            documents.add(createTextDocument(new PDRectangle(0, 0, 400, 600),
+                    Matrix.getTranslateInstance(30, 300),
+                    "Terms and conditions line 1", "Terms and conditions line 2", "Terms and conditions line 3"));
+        }
+
+        try {
+            PdfDenseMergeTool tool = new PdfDenseMergeTool(PDRectangle.A4, 30, 30, 10);
+            tool.setLayoutCache(cache);
+            try (OutputStream result = new FileOutputStream(new File(RESULT_FOLDER, "Merge with Text, layout cache.pdf"))) {
+                tool.merge(result, documents);
+            }
+
+            PdfVeryDenseMergeTool veryDenseTool = new PdfVeryDenseMergeTool(PDRectangle.A4, 30, 30, 10);
+            veryDenseTool.setLayoutCache(cache);
+            try (OutputStream result = new FileOutputStream(new File(RESULT_FOLDER, "Merge with Text, very dense, layout cache.pdf"))) {
+                veryDenseTool.merge(result, documents);
+            }
+        } finally {
+            for (PDDocument document : documents)
+                document.close();
+        }
+
+        Assert.assertEquals("One cached layout per merge tool expected", 2, cacheFolder.list().length);
+    }
+
+    /**
+     * <a href="https://stackoverflow.com/questions/60052967/how-to-dense-merge-pdf-files-using-pdfbox-2-without-whitespace-near-page-breaks">
+     * How to dense merge PDF files using PDFBox 2 without whitespace near page breaks?
+     * </a>
+     * <p>
+     * This test checks the {@link PageLayoutCache} with pages without
+     * resources which are valid and must merge as without cache.
+     * </p>
+     */
+    @Test
+    public void testMergingWithLayoutCacheNoResources() throws IOException {
+        PageLayoutCache cache = new PageLayoutCache(100);
+
+        List<PDDocument> documents = new ArrayList<>();
+        try {
+            for (int i = 1; i <= 3; i++) {
+                PDDocument document = new PDDocument();
+                PDPage page = new PDPage(new PDRectangle(0, 0, 400, 600));
+                document.addPage(page);
+                page.setContents(new PDStream(document, new ByteArrayInputStream("40 300 m 360 340 l S".getBytes())));
+                Assert.assertNull("Page without resources expected", page.getResources());
+                documents.add(document);
+            }
+
+            PdfDenseMergeTool tool = new PdfDenseMergeTool(PDRectangle.A4, 30, 30, 10);
+            tool.setLayoutCache(cache);
+            try (OutputStream result = new FileOutputStream(new File(RESULT_FOLDER, "Merge without Resources, layout cache.pdf"))) {
+                tool.merge(result, documents);
+            }
+
+            PdfVeryDenseMergeTool veryDenseTool = new PdfVeryDenseMergeTool(PDRectangle.A4, 30, 30, 10);
+            veryDenseTool.setLayoutCache(cache);
+            try (OutputStream result = new FileOutputStream(new File(RESULT_FOLDER, "Merge without Resources, very dense, layout cache.pdf"))) {
+                veryDenseTool.merge(result, documents);
+            }
+        } finally {
+            for (PDDocument document : documents)
+                document.close();
+        }
     }
 }